@@ -0,0 +1,47 @@
+package com.janne.coveredv2.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.config.MeterFilterReply;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rejects meters that would give a tag of a metric more than {@code maxValuesPerTag} distinct values,
+ * e.g. ids or raw counts used as tag values. Rejected meters become no-ops and are logged once per tag.
+ */
+@Slf4j
+public class CardinalityGuardMeterFilter implements MeterFilter {
+
+	private final int maxValuesPerTag;
+	private final Map<String, Set<String>> valuesByTag = new ConcurrentHashMap<>();
+	private final Set<String> reportedTags = ConcurrentHashMap.newKeySet();
+
+	public CardinalityGuardMeterFilter(int maxValuesPerTag) {
+		this.maxValuesPerTag = maxValuesPerTag;
+	}
+
+	@Override
+	public MeterFilterReply accept(Meter.Id id) {
+		for (Tag tag : id.getTagsAsIterable()) {
+			String key = id.getName() + ":" + tag.getKey();
+			Set<String> values = valuesByTag.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+			if (!values.contains(tag.getValue()) && values.size() >= maxValuesPerTag) {
+				if (reportedTags.add(key)) {
+					log.warn("Tag {} of metric {} exceeded {} distinct values, rejecting further meters",
+							tag.getKey(), id.getName(), maxValuesPerTag);
+				}
+				return MeterFilterReply.DENY;
+			}
+		}
+		// Only accepted meters take up value slots
+		for (Tag tag : id.getTagsAsIterable()) {
+			valuesByTag.get(id.getName() + ":" + tag.getKey()).add(tag.getValue());
+		}
+		return MeterFilterReply.NEUTRAL;
+	}
+}
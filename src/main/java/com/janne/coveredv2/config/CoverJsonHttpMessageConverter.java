@@ -0,0 +1,46 @@
+package com.janne.coveredv2.config;
+
+import com.janne.coveredv2.dtos.CoverJson;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link CoverJson} by copying its fragments straight into the response stream, without Jackson
+ * and without first concatenating them into one buffer.
+ */
+public class CoverJsonHttpMessageConverter extends AbstractHttpMessageConverter<CoverJson> {
+
+	public CoverJsonHttpMessageConverter() {
+		super(MediaType.APPLICATION_JSON);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return CoverJson.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	protected boolean canRead(MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	protected CoverJson readInternal(Class<? extends CoverJson> clazz, HttpInputMessage inputMessage) {
+		throw new HttpMessageNotReadableException("CoverJson is write-only", inputMessage);
+	}
+
+	@Override
+	protected Long getContentLength(CoverJson coverJson, MediaType contentType) {
+		return coverJson.contentLength();
+	}
+
+	@Override
+	protected void writeInternal(CoverJson coverJson, HttpOutputMessage outputMessage) throws IOException {
+		coverJson.writeTo(outputMessage.getBody());
+	}
+}
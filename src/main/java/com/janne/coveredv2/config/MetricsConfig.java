@@ -0,0 +1,14 @@
+package com.janne.coveredv2.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+	@Bean
+	public CardinalityGuardMeterFilter cardinalityGuardMeterFilter(@Value("${app.metrics.max-tag-values:100}") int maxTagValues) {
+		return new CardinalityGuardMeterFilter(maxTagValues);
+	}
+}
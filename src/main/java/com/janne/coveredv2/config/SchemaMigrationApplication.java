@@ -0,0 +1,31 @@
+package com.janne.coveredv2.config;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+
+/**
+ * Applies the pending {@link SchemaMigrations} and exits, without starting the web server, Hibernate or the
+ * ingestion workers. Runs as a one-off step before a rollout (k8s/schema-migration-job.yaml) from the application
+ * image:
+ * <pre>
+ * java -cp app.jar -Dloader.main=com.janne.coveredv2.config.SchemaMigrationApplication \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher
+ * </pre>
+ */
+public final class SchemaMigrationApplication {
+
+	private SchemaMigrationApplication() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DataSourceAutoConfiguration.class)
+				.web(WebApplicationType.NONE)
+				.run(args)) {
+			new SchemaMigrations(context.getBean(DataSource.class), true).afterPropertiesSet();
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.janne.coveredv2.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class SchemaMigrationConfig {
+
+	@Bean
+	public SchemaMigrations schemaMigrations(DataSource dataSource,
+	                                         @Value("${app.schema-migrations.run-on-startup:true}") boolean runOnStartup) {
+		return new SchemaMigrations(dataSource, runOnStartup);
+	}
+
+	/**
+	 * Builds the EntityManagerFactory, and with it Hibernate's schema update, only after the migrations ran.
+	 */
+	@Bean
+	public static EntityManagerFactoryDependsOnPostProcessor schemaMigrationsDependsOn() {
+		return new EntityManagerFactoryDependsOnPostProcessor(SchemaMigrations.class);
+	}
+}
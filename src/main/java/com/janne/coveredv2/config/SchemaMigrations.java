@@ -0,0 +1,192 @@
+package com.janne.coveredv2.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Ordered one-time migrations for what Hibernate's schema update cannot do (data repairs, column type changes).
+ * - runs before the EntityManagerFactory is built, so Hibernate's update only adds constraints to repaired data
+ * - every migration runs once per database; applied versions are recorded in schema_migration
+ * - a migration commits together with its version row; a replica starting at the same time blocks on the
+ *   version row and skips the migration once the first replica committed
+ * - migrations of tables that do not exist yet are only recorded, since Hibernate creates those tables in their
+ *   current shape
+ * - with runMigrations off, pending migrations fail the startup instead of running; production runs them with
+ *   {@link SchemaMigrationApplication} as a one-off step before the rolling deploy
+ */
+@Slf4j
+public class SchemaMigrations implements InitializingBean {
+
+	private static final String UNIQUE_VIOLATION = "23505";
+
+	static final List<Migration> MIGRATIONS = List.of(
+			new Migration(1, "Collapse duplicate games per steam_id", List.of("game", "cover"), connection -> execute(connection,
+					"""
+							UPDATE cover
+							SET game_uuid = (SELECT survivor.uuid
+							                 FROM game duplicate
+							                          JOIN game survivor ON survivor.steam_id = duplicate.steam_id
+							                 WHERE duplicate.uuid = cover.game_uuid
+							                 ORDER BY survivor.uuid
+							                 LIMIT 1)
+							WHERE game_uuid IN (SELECT g.uuid
+							                    FROM game g
+							                    WHERE g.uuid <> (SELECT g2.uuid FROM game g2 WHERE g2.steam_id = g.steam_id ORDER BY g2.uuid LIMIT 1))
+							""",
+					"""
+							DELETE
+							FROM game
+							WHERE uuid <> (SELECT g2.uuid FROM game g2 WHERE g2.steam_id = game.steam_id ORDER BY g2.uuid LIMIT 1)
+							""")),
+			new Migration(2, "Convert uuid columns to the native uuid type", List.of("game", "cover"), connection -> {
+				convertToUuid(connection, "game", "uuid");
+				convertToUuid(connection, "cover", "uuid");
+				convertToUuid(connection, "cover", "game_uuid");
+			}),
+			new Migration(3, "Keep one cover per steam_grid_db_id", List.of("cover"), connection -> execute(connection,
+					"""
+							DELETE
+							FROM cover
+							WHERE EXISTS (SELECT 1
+							              FROM cover kept
+							              WHERE kept.steam_grid_db_id = cover.steam_grid_db_id
+							                AND kept.uuid < cover.uuid)
+							""")),
+			new Migration(4, "Drop library_request_count, superseded by the decayed library_popularity", List.of("game"),
+					connection -> execute(connection, "ALTER TABLE game DROP COLUMN IF EXISTS library_request_count"))
+	);
+
+	private final DataSource dataSource;
+	private final boolean runMigrations;
+
+	public SchemaMigrations(DataSource dataSource, boolean runMigrations) {
+		this.dataSource = dataSource;
+		this.runMigrations = runMigrations;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws SQLException {
+		try (Connection connection = dataSource.getConnection()) {
+			boolean autoCommit = connection.getAutoCommit();
+			try {
+				connection.setAutoCommit(true);
+				execute(connection, "CREATE TABLE IF NOT EXISTS schema_migration (version INT PRIMARY KEY, " +
+						"description VARCHAR(255), applied_at BIGINT)");
+				for (Migration migration : MIGRATIONS) {
+					apply(connection, migration);
+				}
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	private void apply(Connection connection, Migration migration) throws SQLException {
+		if (isApplied(connection, migration.version())) {
+			return;
+		}
+		if (!runMigrations && tablesExist(connection, migration)) {
+			throw new IllegalStateException("Schema migration " + migration.version() + " (" + migration.description() +
+					") is pending; run SchemaMigrationApplication before starting this release");
+		}
+		connection.setAutoCommit(false);
+		try {
+			try (PreparedStatement insert = connection.prepareStatement(
+					"INSERT INTO schema_migration (version, description, applied_at) VALUES (?, ?, ?)")) {
+				insert.setInt(1, migration.version());
+				insert.setString(2, migration.description());
+				insert.setLong(3, System.currentTimeMillis());
+				insert.executeUpdate();
+			}
+			if (tablesExist(connection, migration)) {
+				long start = System.currentTimeMillis();
+				migration.step().apply(connection);
+				log.info("Applied schema migration {} ({}) in {}ms", migration.version(), migration.description(),
+						System.currentTimeMillis() - start);
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+				log.info("Schema migration {} was applied by another instance", migration.version());
+				return;
+			}
+			throw e;
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	private static boolean isApplied(Connection connection, int version) throws SQLException {
+		try (PreparedStatement query = connection.prepareStatement("SELECT 1 FROM schema_migration WHERE version = ?")) {
+			query.setInt(1, version);
+			try (ResultSet result = query.executeQuery()) {
+				return result.next();
+			}
+		}
+	}
+
+	private static boolean tablesExist(Connection connection, Migration migration) throws SQLException {
+		for (String table : migration.tables()) {
+			if (!tableExists(connection, table)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean tableExists(Connection connection, String table) throws SQLException {
+		try (PreparedStatement query = connection.prepareStatement("SELECT 1 FROM information_schema.tables " +
+				"WHERE LOWER(table_name) = ? AND LOWER(table_schema) = LOWER(CURRENT_SCHEMA)")) {
+			query.setString(1, table);
+			try (ResultSet result = query.executeQuery()) {
+				return result.next();
+			}
+		}
+	}
+
+	/**
+	 * Rewrites a string uuid column to the native uuid type; takes an exclusive table lock, so only done if needed.
+	 */
+	private static void convertToUuid(Connection connection, String table, String column) throws SQLException {
+		try (PreparedStatement query = connection.prepareStatement("SELECT 1 FROM information_schema.columns " +
+				"WHERE LOWER(table_name) = ? AND LOWER(column_name) = ? AND LOWER(data_type) = 'uuid' " +
+				"AND LOWER(table_schema) = LOWER(CURRENT_SCHEMA)")) {
+			query.setString(1, table);
+			query.setString(2, column);
+			try (ResultSet result = query.executeQuery()) {
+				if (result.next()) {
+					return;
+				}
+			}
+		}
+		execute(connection, "ALTER TABLE " + table + " ALTER COLUMN " + column + " TYPE UUID USING CAST(" + column + " AS UUID)");
+	}
+
+	static void execute(Connection connection, String... statements) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			for (String sql : statements) {
+				statement.execute(sql);
+			}
+		}
+	}
+
+	/**
+	 * A migration that only runs if all of its tables exist.
+	 */
+	record Migration(int version, String description, List<String> tables, Step step) {
+	}
+
+	@FunctionalInterface
+	interface Step {
+		void apply(Connection connection) throws SQLException;
+	}
+}
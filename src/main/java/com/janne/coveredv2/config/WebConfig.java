@@ -0,0 +1,35 @@
+package com.janne.coveredv2.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+	@Value("${app.mvc.async.max-concurrency:512}")
+	private int asyncMaxConcurrency;
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.addFirst(new CoverJsonHttpMessageConverter());
+	}
+
+	/**
+	 * Runs StreamingResponseBody bodies (ZIP export, NDJSON libraries) on virtual threads instead of the shared
+	 * applicationTaskExecutor. They mostly block on downloads and Steam calls, so one thread per response is cheap;
+	 * max-concurrency caps how many run at once, further requests wait for a slot.
+	 */
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("mvc-async-");
+		executor.setVirtualThreads(true);
+		executor.setConcurrencyLimit(asyncMaxConcurrency);
+		configurer.setTaskExecutor(executor);
+	}
+}
@@ -2,4 +2,5 @@ package com.janne.coveredv2.controller;
 
 public interface BaseController {
 	String BASE_URL = "/api/v1";
+	int MAX_SCROLL_SIZE = 500;
 }
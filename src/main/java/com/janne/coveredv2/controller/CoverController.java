@@ -1,53 +1,190 @@
 package com.janne.coveredv2.controller;
 
+import com.janne.coveredv2.dtos.CoverStreamSummary;
+import com.janne.coveredv2.dtos.CursorPage;
 import com.janne.coveredv2.entities.Cover;
 import com.janne.coveredv2.service.CoverService;
 import com.janne.coveredv2.service.MetricService;
+import com.janne.coveredv2.service.ingestion.CoverFetchCompletion;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 @RequiredArgsConstructor
 @RequestMapping(BaseController.BASE_URL + "/covers")
 public class CoverController {
 
+	private static final MediaType BINARY_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
 	private final CoverService coverService;
 	private final MetricService metricService;
+	@Value("${app.covers.stream.keep-alive-interval:15s}")
+	private Duration streamKeepAliveInterval;
+	@Value("${app.covers.stream.max-duration:5m}")
+	private Duration streamMaxDuration;
 
 	@GetMapping
 	public ResponseEntity<Page<Cover>> getAllCovers(@PageableDefault(size = 50) Pageable pageable) {
-		metricService.incrementCounter("app_all_covers_requests");
+		metricService.increment(MetricService.RequestMetric.ALL_COVERS);
 		return ResponseEntity.ok(coverService.getAllCovers(pageable));
 	}
 
+	@GetMapping("/scroll")
+	public ResponseEntity<CursorPage<Cover>> scrollCovers(@RequestParam(value = "cursor", required = false) String cursor,
+	                                                      @RequestParam(value = "size", defaultValue = "50") int size,
+	                                                      @RequestParam(value = "include_total", defaultValue = "false") boolean includeTotal) {
+		metricService.increment(MetricService.RequestMetric.SCROLL_COVERS);
+		return ResponseEntity.ok(coverService.getCoversAfter(cursor, Math.clamp(size, 1, BaseController.MAX_SCROLL_SIZE), includeTotal));
+	}
+
+	/**
+	 * Covers of one game. JSON is assembled from pre-serialized fragments; CBOR and Smile are negotiated
+	 * through the Accept header and serialized by Jackson.
+	 */
 	@GetMapping("/game/{gameId}")
-	public ResponseEntity<List<Cover>> getCoversFromGameId(@PathVariable String gameId) {
-		metricService.incrementCounter("app_cover_from_game_request", List.of("gameId", gameId));
-		return ResponseEntity.ok(coverService.getCoversFromGameId(gameId));
+	public ResponseEntity<?> getCoversFromGameId(@PathVariable String gameId,
+	                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		metricService.increment(MetricService.RequestMetric.COVER_FROM_GAME);
+		MediaType contentType = negotiateEncoding(accept);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(contentType);
+		if (!contentType.equals(MediaType.APPLICATION_JSON)) {
+			return response.body(coverService.getCoversFromGameId(gameId));
+		}
+		return response.body(coverService.getCoverJsonFromGameId(gameId));
 	}
 
+	/**
+	 * Covers of the given games. view=slim returns only uuid, game_uuid, thumb, width, height and style.
+	 * JSON responses of the full view are assembled from pre-serialized fragments; CBOR and Smile are
+	 * negotiated through the Accept header and serialized by Jackson.
+	 */
 	@PostMapping("/games")
-	public ResponseEntity<List<Cover>> getCoversFromGameIds(@RequestBody String[] gamesUuids) {
-		metricService.incrementCounter("app_cover_from_games_request", List.of("game_count", String.valueOf(gamesUuids.length)));
-		return ResponseEntity.ok(coverService.getCoversFromGameIds(gamesUuids));
+	public ResponseEntity<?> getCoversFromGameIds(@RequestBody String[] gamesUuids,
+	                                              @RequestParam(value = "view", defaultValue = "full") String view,
+	                                              @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		metricService.increment(MetricService.SizedRequestMetric.COVERS_FROM_GAMES, gamesUuids.length);
+		MediaType contentType = negotiateEncoding(accept);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(contentType);
+		if (isSlimView(view)) {
+			return response.body(coverService.getCoverSummariesFromGameIds(gamesUuids));
+		}
+		if (!contentType.equals(MediaType.APPLICATION_JSON)) {
+			return response.body(coverService.getCoversFromGameIds(gamesUuids));
+		}
+		return response.body(coverService.getCoverJsonFromGameIds(gamesUuids));
+	}
+
+	/**
+	 * Picks CBOR or Smile if the client prefers them, JSON otherwise; JSON wins ties and wildcards.
+	 */
+	private static MediaType negotiateEncoding(String accept) {
+		if (accept == null || accept.isBlank()) {
+			return MediaType.APPLICATION_JSON;
+		}
+		List<MediaType> mediaTypes;
+		try {
+			mediaTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+		} catch (InvalidMediaTypeException e) {
+			return MediaType.APPLICATION_JSON;
+		}
+		mediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+		for (MediaType mediaType : mediaTypes) {
+			if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+				return MediaType.APPLICATION_JSON;
+			}
+			if (mediaType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+				return MediaType.APPLICATION_CBOR;
+			}
+			if (mediaType.isCompatibleWith(BINARY_SMILE)) {
+				return BINARY_SMILE;
+			}
+		}
+		return MediaType.APPLICATION_JSON;
+	}
+
+	private static boolean isSlimView(String view) {
+		if ("slim".equalsIgnoreCase(view)) {
+			return true;
+		}
+		if (!"full".equalsIgnoreCase(view)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown view " + view + ", expected full or slim");
+		}
+		return false;
+	}
+
+	/**
+	 * Server-Sent Events stream of the covers of the given games, pushed as soon as ingestion stored them.
+	 * Emits one "fetched", "dead_lettered" or "unknown" event per game, a keep-alive comment while waiting,
+	 * and a final "complete" event once every game is resolved or the stream reached its maximum duration.
+	 */
+	@GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public Flux<ServerSentEvent<Object>> streamCovers(@RequestParam("gameUuids") List<String> gameUuids) {
+		return streamCoverEvents(gameUuids);
+	}
+
+	@PostMapping(value = "/stream", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public Flux<ServerSentEvent<Object>> streamCoversFromBody(@RequestBody List<String> gameUuids) {
+		return streamCoverEvents(gameUuids);
+	}
+
+	private Flux<ServerSentEvent<Object>> streamCoverEvents(List<String> gameUuids) {
+		metricService.increment(MetricService.RequestMetric.COVER_STREAM);
+		Set<String> requested = new HashSet<>(gameUuids);
+		Set<String> resolved = ConcurrentHashMap.newKeySet();
+
+		Flux<ServerSentEvent<Object>> events = coverService.streamCoverCompletions(requested)
+				.take(streamMaxDuration)
+				.doOnNext(completion -> resolved.add(completion.gameUuid()))
+				.map(completion -> ServerSentEvent.builder()
+						.event(completion.status().name().toLowerCase())
+						.id(completion.gameUuid())
+						.data((Object) completion)
+						.build());
+		Mono<ServerSentEvent<Object>> complete = Mono.fromSupplier(() -> ServerSentEvent.builder()
+				.event("complete")
+				.data((Object) CoverStreamSummary.builder()
+						.resolvedGames(resolved.size())
+						.unresolvedGames(requested.stream().filter(uuid -> !resolved.contains(uuid)).toList())
+						.build())
+				.build());
+
+		return events
+				.publish(shared -> Flux.merge(shared, Flux.interval(streamKeepAliveInterval)
+						.map(tick -> ServerSentEvent.builder().comment("keep-alive").build())
+						.takeUntilOther(shared.ignoreElements())))
+				.concatWith(complete);
 	}
 
 	@PostMapping(value = "/export", consumes = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<byte[]> exportCoversZip(@RequestBody java.util.List<String> coverUuids) {
-		metricService.incrementCounter("app_export_covers_request", List.of("cover_count", String.valueOf(coverUuids.size())));
-		byte[] zipBytes = coverService.buildCoversZip(coverUuids);
+	public ResponseEntity<StreamingResponseBody> exportCoversZip(@RequestBody java.util.List<String> coverUuids) {
+		metricService.increment(MetricService.SizedRequestMetric.EXPORT_COVERS, coverUuids.size());
+		StreamingResponseBody body = outputStream -> coverService.writeCoversZip(coverUuids, outputStream);
 		return ResponseEntity.ok()
 				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"export.zip\"")
 				.contentType(MediaType.APPLICATION_OCTET_STREAM)
-				.body(zipBytes);
+				.body(body);
 	}
 
 }
@@ -1,18 +1,26 @@
 package com.janne.coveredv2.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.janne.coveredv2.dtos.CursorPage;
+import com.janne.coveredv2.dtos.DeadLetteredGame;
 import com.janne.coveredv2.dtos.GameWithPlaytime;
 import com.janne.coveredv2.entities.Game;
 import com.janne.coveredv2.service.GameService;
 import com.janne.coveredv2.service.MetricService;
+import com.janne.coveredv2.service.ingestion.CoverIngestionQueue;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 @RestController
 @RequiredArgsConstructor
@@ -21,38 +29,96 @@ public class GameController {
 
     private final GameService gameService;
     private final MetricService metricService;
+    private final CoverIngestionQueue coverIngestionQueue;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
     public ResponseEntity<Page<Game>> getAllGames(@PageableDefault(size = 50) Pageable pageable,
                                                   @RequestParam(value = "search", required = false) String search) {
-        metricService.incrementCounter("app_all_games_requests");
+        metricService.increment(MetricService.RequestMetric.ALL_GAMES);
         return ResponseEntity.ok(gameService.getAllGames(pageable, search));
     }
 
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPage<Game>> scrollGames(@RequestParam(value = "cursor", required = false) String cursor,
+                                                        @RequestParam(value = "size", defaultValue = "50") int size,
+                                                        @RequestParam(value = "include_total", defaultValue = "false") boolean includeTotal) {
+        metricService.increment(MetricService.RequestMetric.SCROLL_GAMES);
+        return ResponseEntity.ok(gameService.getGamesAfter(cursor, Math.clamp(size, 1, BaseController.MAX_SCROLL_SIZE), includeTotal));
+    }
+
+    @GetMapping("/dead-letter")
+    public ResponseEntity<Page<DeadLetteredGame>> getDeadLetteredGames(@PageableDefault(size = 50) Pageable pageable) {
+        return ResponseEntity.ok(coverIngestionQueue.getDeadLetteredGames(pageable).map(DeadLetteredGame::fromGame));
+    }
+
     @GetMapping("/player/{playerId}")
     public ResponseEntity<GameWithPlaytime[]> getGamesFromPlayer(@PathVariable Long playerId) {
+        long start = System.nanoTime();
         GameWithPlaytime[] games = gameService.getGamesFromPlayer(playerId);
-        metricService.incrementCounter("app_get_games_from_player", List.of(
-            "game_count", String.valueOf(games.length),
-            "unresolved_games", String.valueOf(
-                Arrays.stream(games).filter(game ->
-                    game.getGame().getTimeOfLastCoverFetch() == null
-                ).toList().size())
-        ));
+        recordLibraryRequest(MetricService.LibrarySource.PLAYER, games, start);
         return ResponseEntity.ok(games);
     }
 
+    @GetMapping(value = "/player/{playerId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamGamesFromPlayer(@PathVariable Long playerId) {
+        return ndjson(MetricService.LibrarySource.PLAYER,
+            batchConsumer -> gameService.streamGamesFromPlayer(playerId, batchConsumer));
+    }
+
     @GetMapping("/family/{userId}")
     public ResponseEntity<GameWithPlaytime[]> getGamesFromSteamFamilyLibrary(@PathVariable Long userId,
                                                                              @RequestParam("token") String userApiToken) {
+        long start = System.nanoTime();
         GameWithPlaytime[] games = gameService.getGameFromSteamFamilyLibrary(userId, userApiToken);
-        metricService.incrementCounter("app_get_games_from_player_family", List.of(
-            "game_count", String.valueOf(games.length),
-            "unresolved_games", String.valueOf(
-                Arrays.stream(games).filter(game ->
-                    game.getGame().getTimeOfLastCoverFetch() == null
-                ).toList().size())
-        ));
+        recordLibraryRequest(MetricService.LibrarySource.FAMILY, games, start);
         return ResponseEntity.ok(games);
     }
+
+    @GetMapping(value = "/family/{userId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamGamesFromSteamFamilyLibrary(@PathVariable Long userId,
+                                                                                   @RequestParam("token") String userApiToken) {
+        return ndjson(MetricService.LibrarySource.FAMILY,
+            batchConsumer -> gameService.streamGamesFromSteamFamilyLibrary(userId, userApiToken, batchConsumer));
+    }
+
+    /**
+     * Writes one GameWithPlaytime per line, flushing after every resolved batch.
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(MetricService.LibrarySource source,
+                                                         Consumer<Consumer<List<GameWithPlaytime>>> library) {
+        StreamingResponseBody body = outputStream -> {
+            long start = System.nanoTime();
+            int[] counts = new int[2];
+            library.accept(batch -> {
+                try {
+                    for (GameWithPlaytime game : batch) {
+                        outputStream.write(objectMapper.writeValueAsBytes(game));
+                        outputStream.write('\n');
+                        if (game.getGame().getTimeOfLastCoverFetch() == null) {
+                            counts[1]++;
+                        }
+                    }
+                    counts[0] += batch.size();
+                    outputStream.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            metricService.recordLibraryRequest(source, counts[0], counts[1], System.nanoTime() - start);
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+
+    private void recordLibraryRequest(MetricService.LibrarySource source, GameWithPlaytime[] games, long start) {
+        int unresolved = 0;
+        for (GameWithPlaytime game : games) {
+            if (game.getGame().getTimeOfLastCoverFetch() == null) {
+                unresolved++;
+            }
+        }
+        metricService.recordLibraryRequest(source, games.length, unresolved, System.nanoTime() - start);
+    }
 }
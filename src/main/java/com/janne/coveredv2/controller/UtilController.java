@@ -11,8 +11,6 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-
 @RestController
 @RequiredArgsConstructor
 @RequestMapping(BaseController.BASE_URL + "/util")
@@ -24,7 +22,7 @@ public class UtilController {
     @GetMapping("/steam/resolve-vanity-url/{vanityUrl}")
     public ResponseEntity<SteamIdResponse> getUserGameLibrary(@PathVariable String vanityUrl) {
         String steamId = steamApiService.resolveSteamIdFromSteamVanityUrl(vanityUrl);
-        metricService.incrementCounter("app_resolve_vanity_url");
+        metricService.increment(MetricService.RequestMetric.RESOLVE_VANITY_URL);
         return ResponseEntity.ok(SteamIdResponse.builder()
             .steamid(steamId)
             .build());
@@ -33,18 +31,14 @@ public class UtilController {
     @GetMapping("/steam/username/{steamId}")
     public ResponseEntity<String> getUserName(@PathVariable Long steamId) {
         String username = steamApiService.getSteamUserName(steamId);
-        metricService.incrementCounter("app_username_requests");
+        metricService.increment(MetricService.RequestMetric.USERNAME);
         return ResponseEntity.ok(username);
     }
 
     @GetMapping("/steam/profile-validity/{steamId}")
     public ResponseEntity<ProfileValidityResponse> getProfileValidity(@PathVariable Long steamId) {
         ProfileValidityResponse profileValidityResponse = steamApiService.isProfileValid(steamId);
-        metricService.incrementCounter("app_profile_validity_requests",
-            List.of(
-                "valid", String.valueOf(profileValidityResponse.isValid()),
-                "reason", String.valueOf(profileValidityResponse.getReason())
-            ));
+        metricService.recordProfileValidity(profileValidityResponse);
         return ResponseEntity.ok(profileValidityResponse);
     }
 }
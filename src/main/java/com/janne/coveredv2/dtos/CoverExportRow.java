@@ -0,0 +1,4 @@
+package com.janne.coveredv2.dtos;
+
+public record CoverExportRow(String coverUuid, String url, Long steamId, String capsuleFilename) {
+}
@@ -0,0 +1,39 @@
+package com.janne.coveredv2.dtos;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A JSON array of covers assembled from pre-serialized fragments.
+ * Every fragment holds the comma separated cover objects of one game, without brackets; empty fragments are skipped.
+ */
+public record CoverJson(List<byte[]> fragments) {
+
+	public long contentLength() {
+		long length = 2;
+		int written = 0;
+		for (byte[] fragment : fragments) {
+			if (fragment.length > 0) {
+				length += fragment.length + (written++ > 0 ? 1 : 0);
+			}
+		}
+		return length;
+	}
+
+	public void writeTo(OutputStream outputStream) throws IOException {
+		outputStream.write('[');
+		boolean first = true;
+		for (byte[] fragment : fragments) {
+			if (fragment.length == 0) {
+				continue;
+			}
+			if (!first) {
+				outputStream.write(',');
+			}
+			outputStream.write(fragment);
+			first = false;
+		}
+		outputStream.write(']');
+	}
+}
@@ -0,0 +1,19 @@
+package com.janne.coveredv2.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data of the final "complete" event of a cover stream.
+ */
+@Data
+@Builder
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class CoverStreamSummary {
+	private int resolvedGames;
+	private List<String> unresolvedGames;
+}
@@ -0,0 +1,11 @@
+package com.janne.coveredv2.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+/**
+ * Slim view of a cover with only the columns most clients need, read through a DTO projection.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record CoverSummary(String uuid, String gameUuid, String thumb, int width, int height, String style) {
+}
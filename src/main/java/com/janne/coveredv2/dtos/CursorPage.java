@@ -0,0 +1,51 @@
+package com.janne.coveredv2.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of a keyset paginated listing.
+ * next_cursor is an opaque token for the following page and is null on the last page;
+ * total_elements is only present if the client asked for it; it comes from the in-memory entity counts, so rows
+ * written by other replicas only show up after the next count reconcile.
+ */
+@Data
+@Builder
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class CursorPage<T> {
+	private List<T> content;
+	private String nextCursor;
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private Long totalElements;
+
+	public static String encodeCursor(String lastKey) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(lastKey.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the key after which the page starts, or null for the first page.
+	 * Keys are uuids; anything else is rejected before it reaches a query.
+	 */
+	public static String decodeCursor(String cursor) {
+		if (cursor == null || cursor.isBlank()) {
+			return null;
+		}
+		try {
+			String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			UUID.fromString(key);
+			return key;
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+		}
+	}
+}
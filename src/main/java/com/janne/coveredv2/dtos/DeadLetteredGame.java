@@ -0,0 +1,28 @@
+package com.janne.coveredv2.dtos;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.janne.coveredv2.entities.Game;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class DeadLetteredGame {
+	private String uuid;
+	private String name;
+	private Long steamId;
+	private Integer coverFetchAttempts;
+	private String lastCoverFetchError;
+
+	public static DeadLetteredGame fromGame(Game game) {
+		return DeadLetteredGame.builder()
+				.uuid(game.getUuid())
+				.name(game.getName())
+				.steamId(game.getSteamId())
+				.coverFetchAttempts(game.getCoverFetchAttempts())
+				.lastCoverFetchError(game.getLastCoverFetchError())
+				.build();
+	}
+}
@@ -0,0 +1,4 @@
+package com.janne.coveredv2.dtos;
+
+public record GameNameRow(String uuid, String name) {
+}
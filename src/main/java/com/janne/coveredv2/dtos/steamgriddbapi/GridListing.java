@@ -0,0 +1,16 @@
+package com.janne.coveredv2.dtos.steamgriddbapi;
+
+import java.util.List;
+
+/**
+ * All grids of a SteamGridDB game as fetched page by page.
+ * - complete is false if a page was skipped in partial mode
+ * - etag and lastModified are the validators of the first page, if SteamGridDB sent any
+ * - notModified means a conditional request found the first page unchanged; grids is empty then
+ */
+public record GridListing(List<GridDto> grids, boolean complete, boolean notModified, String etag, String lastModified) {
+
+	public static GridListing notModifiedListing() {
+		return new GridListing(List.of(), true, true, null, null);
+	}
+}
@@ -6,21 +6,29 @@ import com.janne.coveredv2.dtos.steamgriddbapi.GridDto;
 import jakarta.persistence.*;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.JavaType;
+import org.hibernate.annotations.UuidGenerator;
 
 @Slf4j
 @Getter
 @Setter
 @Entity
+@Table(indexes = {
+		@Index(name = "idx_cover_game_uuid", columnList = "gameUuid"),
+		@Index(name = "uk_cover_steam_grid_db_id", columnList = "steamGridDbId", unique = true)
+})
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
 public class Cover {
 	@Id
-	@GeneratedValue(strategy = GenerationType.UUID)
+	@UuidGenerator(algorithm = UuidV7Generator.class)
+	@JavaType(UuidStringJavaType.class)
 	private String uuid;
 	private long steamGridDbId;
 	private String style;
+	@JavaType(UuidStringJavaType.class)
 	private String gameUuid;
 	private int width;
 	private int height;
@@ -37,6 +45,7 @@ public class Cover {
 	@Embeddable
 	@Getter
 	@Setter
+	@EqualsAndHashCode
 	@NoArgsConstructor
 	@AllArgsConstructor
 	public static class Author {
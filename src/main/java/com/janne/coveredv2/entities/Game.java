@@ -1,20 +1,29 @@
 package com.janne.coveredv2.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.JavaType;
+import org.hibernate.annotations.UuidGenerator;
 
 @Getter
 @Setter
 @Entity
+@Table(indexes = {
+		@Index(name = "uk_game_steam_id", columnList = "steamId", unique = true),
+		@Index(name = "idx_game_time_of_last_cover_fetch", columnList = "timeOfLastCoverFetch"),
+		@Index(name = "idx_game_steam_grid_db_id", columnList = "steamGridDbId")
+})
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
 public class Game {
 	@Id
-	@GeneratedValue(strategy = GenerationType.UUID)
+	@UuidGenerator(algorithm = UuidV7Generator.class)
+	@JavaType(UuidStringJavaType.class)
 	private String uuid;
 	private String name;
 	private Long steamId;
@@ -22,6 +31,32 @@ public class Game {
 	private String capsuleImageUrl;
 	private String libraryImageUrl;
 	private Long timeOfLastCoverFetch;
+	private Long steamGridDbId;
 	private Boolean steamGridDbMissing;
+	@JsonIgnore
+	private Long steamGridDbMissingCheckedAt;
 	private String capsuleFilename;
+	@JsonIgnore
+	private String coverFetchLeaseOwner;
+	@JsonIgnore
+	private Long coverFetchLeaseUntil;
+	@JsonIgnore
+	private Integer coverFetchAttempts;
+	@JsonIgnore
+	private Long nextCoverFetchAttemptAt;
+	@JsonIgnore
+	private String lastCoverFetchError;
+	@JsonIgnore
+	private Boolean coverFetchDeadLettered;
+	@JsonIgnore
+	private Long coverFetchRequestedAt;
+	// Distinct library requesters, halved every popularity-half-life; as of libraryPopularityAt
+	@JsonIgnore
+	private Double libraryPopularity;
+	@JsonIgnore
+	private Long libraryPopularityAt;
+	@JsonIgnore
+	private String gridsEtag;
+	@JsonIgnore
+	private String gridsLastModified;
 }
@@ -0,0 +1,61 @@
+package com.janne.coveredv2.entities;
+
+import org.hibernate.type.SqlTypes;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractClassJavaType;
+import org.hibernate.type.descriptor.java.ImmutableMutabilityPlan;
+import org.hibernate.type.descriptor.jdbc.JdbcType;
+import org.hibernate.type.descriptor.jdbc.JdbcTypeIndicators;
+
+import java.util.UUID;
+
+/**
+ * Maps String uuid attributes onto the native uuid column type, so the entities, caches and API keep working with
+ * the string form while the database stores 16 byte keys. Binding a string that is not a UUID fails; ids coming
+ * from clients have to be validated before they reach a query.
+ */
+public class UuidStringJavaType extends AbstractClassJavaType<String> {
+
+	public UuidStringJavaType() {
+		super(String.class, ImmutableMutabilityPlan.instance());
+	}
+
+	@Override
+	public JdbcType getRecommendedJdbcType(JdbcTypeIndicators indicators) {
+		return indicators.getJdbcType(SqlTypes.UUID);
+	}
+
+	@Override
+	public String fromString(CharSequence string) {
+		return string == null ? null : string.toString();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <X> X unwrap(String value, Class<X> type, WrapperOptions options) {
+		if (value == null) {
+			return null;
+		}
+		if (UUID.class.isAssignableFrom(type)) {
+			return (X) UUID.fromString(value);
+		}
+		if (String.class.isAssignableFrom(type)) {
+			return (X) value;
+		}
+		throw unknownUnwrap(type);
+	}
+
+	@Override
+	public <X> String wrap(X value, WrapperOptions options) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof UUID uuid) {
+			return uuid.toString();
+		}
+		if (value instanceof String string) {
+			return string;
+		}
+		throw unknownWrap(value.getClass());
+	}
+}
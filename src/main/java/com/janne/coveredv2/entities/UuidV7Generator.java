@@ -0,0 +1,35 @@
+package com.janne.coveredv2.entities;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generates time-ordered UUIDv7 keys (RFC 9562): a 48 bit millisecond timestamp followed by version, variant
+ * and 74 random bits. New rows therefore land at the right edge of the primary key index instead of at random
+ * pages; keys created within the same millisecond are unordered among each other.
+ */
+public class UuidV7Generator implements UuidValueGenerator {
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	@Override
+	public UUID generateUuid(SharedSessionContractImplementor session) {
+		return generate(System.currentTimeMillis());
+	}
+
+	static UUID generate(long timestampMillis) {
+		byte[] random = new byte[10];
+		RANDOM.nextBytes(random);
+		long randomHigh = ((random[0] & 0xFFL) << 8) | (random[1] & 0xFFL);
+		long randomLow = 0;
+		for (int i = 2; i < 10; i++) {
+			randomLow = (randomLow << 8) | (random[i] & 0xFFL);
+		}
+		long mostSignificantBits = (timestampMillis << 16) | 0x7000L | (randomHigh & 0x0FFFL);
+		long leastSignificantBits = (randomLow & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return new UUID(mostSignificantBits, leastSignificantBits);
+	}
+}
@@ -1,7 +1,12 @@
 package com.janne.coveredv2.repositories;
 
+import com.janne.coveredv2.dtos.CoverExportRow;
+import com.janne.coveredv2.dtos.CoverSummary;
 import com.janne.coveredv2.entities.Cover;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
 import java.util.List;
@@ -10,4 +15,18 @@ public interface CoverRepository extends JpaRepository<Cover, String> {
 	List<Cover> getCoversByGameUuid(String gameUuid);
 
 	List<Cover> findByGameUuidIn(Collection<String> gameUuids);
+
+	List<Cover> findBySteamGridDbIdIn(Collection<Long> steamGridDbIds);
+
+	@Query("SELECT new com.janne.coveredv2.dtos.CoverSummary(c.uuid, c.gameUuid, c.thumb, c.width, c.height, c.style) " +
+			"FROM Cover c WHERE c.gameUuid IN :gameUuids")
+	List<CoverSummary> findSummariesByGameUuidIn(@Param("gameUuids") Collection<String> gameUuids);
+
+	List<Cover> findAllByOrderByUuidAsc(Pageable pageable);
+
+	List<Cover> findByUuidGreaterThanOrderByUuidAsc(String uuid, Pageable pageable);
+
+	@Query("SELECT new com.janne.coveredv2.dtos.CoverExportRow(c.uuid, c.url, g.steamId, g.capsuleFilename) " +
+			"FROM Cover c JOIN Game g ON g.uuid = c.gameUuid WHERE c.uuid IN :coverUuids")
+	List<CoverExportRow> findExportRows(@Param("coverUuids") Collection<String> coverUuids);
 }
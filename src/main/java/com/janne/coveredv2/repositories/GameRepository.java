@@ -1,19 +1,121 @@
 package com.janne.coveredv2.repositories;
 
+import com.janne.coveredv2.dtos.GameNameRow;
 import com.janne.coveredv2.entities.Game;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 public interface GameRepository extends JpaRepository<Game, String> {
+	String AVAILABLE = "(cover_fetch_lease_until IS NULL OR cover_fetch_lease_until < :now) " +
+			"AND (next_cover_fetch_attempt_at IS NULL OR next_cover_fetch_attempt_at <= :now) ";
+	String CLAIMABLE = "time_of_last_cover_fetch IS NULL AND " + AVAILABLE +
+			"AND (cover_fetch_dead_lettered IS NULL OR cover_fetch_dead_lettered = FALSE) ";
+	// Popularity decayed to :now; NULL for games no library request was counted for
+	String POPULARITY = "(library_popularity * POWER(0.5, (:now - library_popularity_at) / :popularityHalfLife)) ";
+	String REFRESHABLE = "(time_of_last_cover_fetch < :staleBefore " +
+			"OR (" + POPULARITY + ">= :popularThreshold AND time_of_last_cover_fetch < :popularStaleBefore) " +
+			"OR (steam_grid_db_missing = TRUE AND steam_grid_db_missing_checked_at < :missingCheckedBefore)) AND " + AVAILABLE;
+	String INTERACTIVE_LANE = "AND cover_fetch_requested_at >= :interactiveSince ";
+	String NOT_INTERACTIVE = "AND (cover_fetch_requested_at IS NULL OR cover_fetch_requested_at < :interactiveSince) ";
+	String POPULAR_LANE = NOT_INTERACTIVE + "AND " + POPULARITY + ">= :popularThreshold ";
+	String BACKGROUND_LANE = NOT_INTERACTIVE + "AND (library_popularity IS NULL OR " + POPULARITY + "< :popularThreshold) ";
+
 	Optional<Game> findBySteamId(Long steamId);
 
-	@Query("SELECT g FROM Game g WHERE g.timeOfLastCoverFetch IS NULL")
-	List<Game> getGamesWithoutFetchedCovers();
+	List<Game> findBySteamIdIn(Collection<Long> steamIds);
+
+	@Query(value = "SELECT * FROM game WHERE " + CLAIMABLE + INTERACTIVE_LANE +
+			"ORDER BY cover_fetch_requested_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+	List<Game> lockInteractiveLane(@Param("now") long now, @Param("interactiveSince") long interactiveSince, @Param("limit") int limit);
+
+	@Query(value = "SELECT * FROM game WHERE " + CLAIMABLE + POPULAR_LANE +
+			"ORDER BY " + POPULARITY + "DESC LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+	List<Game> lockPopularLane(@Param("now") long now, @Param("interactiveSince") long interactiveSince,
+	                           @Param("popularThreshold") int popularThreshold, @Param("popularityHalfLife") double popularityHalfLife,
+	                           @Param("limit") int limit);
+
+	@Query(value = "SELECT * FROM game WHERE " + CLAIMABLE + BACKGROUND_LANE +
+			"LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+	List<Game> lockBackgroundLane(@Param("now") long now, @Param("interactiveSince") long interactiveSince,
+	                              @Param("popularThreshold") int popularThreshold, @Param("popularityHalfLife") double popularityHalfLife,
+	                              @Param("limit") int limit);
+
+	// Popular games first, then the longest unrefreshed
+	@Query(value = "SELECT * FROM game WHERE " + REFRESHABLE +
+			"ORDER BY CASE WHEN " + POPULARITY + ">= :popularThreshold THEN 0 ELSE 1 END, time_of_last_cover_fetch " +
+			"LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+	List<Game> lockRefreshLane(@Param("now") long now, @Param("staleBefore") long staleBefore,
+	                           @Param("popularStaleBefore") long popularStaleBefore, @Param("popularThreshold") int popularThreshold,
+	                           @Param("popularityHalfLife") double popularityHalfLife,
+	                           @Param("missingCheckedBefore") long missingCheckedBefore, @Param("limit") int limit);
+
+	// Row locks make concurrent markCoverFetchRequested increments wait instead of being overwritten on flush
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT g FROM Game g WHERE g.uuid IN :uuids ORDER BY g.uuid")
+	List<Game> lockAllByUuidIn(@Param("uuids") Collection<String> uuids);
+
+	@Query(value = "SELECT COUNT(*) FROM game WHERE " + CLAIMABLE + INTERACTIVE_LANE, nativeQuery = true)
+	long countInteractiveLane(@Param("now") long now, @Param("interactiveSince") long interactiveSince);
+
+	@Query(value = "SELECT COUNT(*) FROM game WHERE " + CLAIMABLE + POPULAR_LANE, nativeQuery = true)
+	long countPopularLane(@Param("now") long now, @Param("interactiveSince") long interactiveSince,
+	                      @Param("popularThreshold") int popularThreshold, @Param("popularityHalfLife") double popularityHalfLife);
+
+	@Query(value = "SELECT COUNT(*) FROM game WHERE " + CLAIMABLE + BACKGROUND_LANE, nativeQuery = true)
+	long countBackgroundLane(@Param("now") long now, @Param("interactiveSince") long interactiveSince,
+	                         @Param("popularThreshold") int popularThreshold, @Param("popularityHalfLife") double popularityHalfLife);
+
+	@Query(value = "SELECT COUNT(*) FROM game WHERE " + REFRESHABLE, nativeQuery = true)
+	long countRefreshLane(@Param("now") long now, @Param("staleBefore") long staleBefore,
+	                      @Param("popularStaleBefore") long popularStaleBefore, @Param("popularThreshold") int popularThreshold,
+	                      @Param("popularityHalfLife") double popularityHalfLife, @Param("missingCheckedBefore") long missingCheckedBefore);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE Game g SET g.libraryPopularity = COALESCE(g.libraryPopularity * " +
+			"POWER(0.5, (:requestedAt - g.libraryPopularityAt) / :popularityHalfLife), 0) + :increment, " +
+			"g.libraryPopularityAt = :requestedAt, " +
+			"g.coverFetchRequestedAt = CASE WHEN g.timeOfLastCoverFetch IS NULL THEN :requestedAt ELSE g.coverFetchRequestedAt END " +
+			"WHERE g.uuid IN :uuids")
+	int markCoverFetchRequested(@Param("uuids") Collection<String> uuids, @Param("requestedAt") long requestedAt,
+	                            @Param("popularityHalfLife") double popularityHalfLife, @Param("increment") int increment);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE Game g SET g.steamGridDbId = :steamGridDbId, g.steamGridDbMissing = false, " +
+			"g.steamGridDbMissingCheckedAt = null WHERE g.uuid = :uuid")
+	void updateSteamGridDbId(@Param("uuid") String uuid, @Param("steamGridDbId") Long steamGridDbId);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE Game g SET g.steamGridDbId = null, g.steamGridDbMissing = true, g.steamGridDbMissingCheckedAt = :checkedAt " +
+			"WHERE g.uuid = :uuid")
+	void markSteamGridDbMissing(@Param("uuid") String uuid, @Param("checkedAt") long checkedAt);
+
+	Page<Game> findByCoverFetchDeadLetteredTrue(Pageable pageable);
 
 	Page<Game> findByNameContainingIgnoreCase(String name, Pageable pageable);
+
+	List<Game> findAllByOrderByUuidAsc(Pageable pageable);
+
+	List<Game> findByUuidGreaterThanOrderByUuidAsc(String uuid, Pageable pageable);
+
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+	@Query("SELECT new com.janne.coveredv2.dtos.GameNameRow(g.uuid, g.name) FROM Game g")
+	Stream<GameNameRow> streamGameNames();
 }
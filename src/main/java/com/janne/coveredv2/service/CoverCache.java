@@ -0,0 +1,74 @@
+package com.janne.coveredv2.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.janne.coveredv2.entities.Cover;
+import com.janne.coveredv2.repositories.CoverRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of the covers of a game, keyed by game uuid.
+ * - bounded by the total number of cached covers; every entry weighs its cover count plus one
+ * - multi-game lookups load all missing games with a single IN query
+ * - entries are invalidated by the ingestion write path, see {@link CoverService#saveCovers(Cover[])}
+ * - games without covers are cached only briefly, since they are usually still being ingested, possibly by
+ *   another replica whose writes this cache does not see
+ */
+@Service
+public class CoverCache {
+
+	private final CoverRepository coverRepository;
+	private final Cache<String, List<Cover>> cache;
+
+	public CoverCache(CoverRepository coverRepository,
+	                  @Value("${app.covers.cache.max-weight:200000}") long maxWeight,
+	                  @Value("${app.covers.cache.ttl:1h}") Duration ttl,
+	                  @Value("${app.covers.cache.empty-ttl:30s}") Duration emptyTtl,
+	                  MeterRegistry meterRegistry) {
+		this.coverRepository = coverRepository;
+		this.cache = Caffeine.newBuilder()
+				.maximumWeight(maxWeight)
+				.weigher((String gameUuid, List<Cover> covers) -> covers.size() + 1)
+				.expireAfter(Expiry.writing((String gameUuid, List<Cover> covers) -> covers.isEmpty() ? emptyTtl : ttl))
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "game_covers");
+	}
+
+	public List<Cover> getCovers(String gameUuid) {
+		return cache.get(gameUuid, uuid -> List.copyOf(coverRepository.getCoversByGameUuid(uuid)));
+	}
+
+	/**
+	 * Returns the covers of every given game; games without covers map to an empty list.
+	 * The iteration order of the returned map is unspecified.
+	 */
+	public Map<String, List<Cover>> getCovers(Collection<String> gameUuids) {
+		return cache.getAll(gameUuids, this::loadAll);
+	}
+
+	public void invalidate(Collection<String> gameUuids) {
+		cache.invalidateAll(gameUuids);
+	}
+
+	private Map<String, List<Cover>> loadAll(Set<? extends String> gameUuids) {
+		Map<String, List<Cover>> coversByGameUuid = new HashMap<>(gameUuids.size());
+		coverRepository.findByGameUuidIn(List.copyOf(gameUuids))
+				.forEach(cover -> coversByGameUuid.computeIfAbsent(cover.getGameUuid(), uuid -> new ArrayList<>()).add(cover));
+		Map<String, List<Cover>> result = new HashMap<>(gameUuids.size());
+		gameUuids.forEach(uuid -> result.put(uuid, List.copyOf(coversByGameUuid.getOrDefault(uuid, List.of()))));
+		return result;
+	}
+}
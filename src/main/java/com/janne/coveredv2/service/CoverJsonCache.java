@@ -0,0 +1,93 @@
+package com.janne.coveredv2.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.janne.coveredv2.dtos.CoverJson;
+import com.janne.coveredv2.entities.Cover;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of the covers of a game as ready-made UTF-8 JSON, keyed by game uuid.
+ * - a fragment is the game's cover list serialized by the application's ObjectMapper with the surrounding
+ *   brackets removed, so assembled responses are byte for byte what Jackson would have written
+ * - bounded by fragment bytes and expiring like {@link CoverCache}; misses are serialized from {@link CoverCache}, so a multi-game miss is still one query
+ * - invalidated together with {@link CoverCache} by {@link CoverService#saveCovers(Cover[])}
+ */
+@Service
+public class CoverJsonCache {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final CoverCache coverCache;
+	private final ObjectMapper objectMapper;
+	private final Cache<String, byte[]> cache;
+
+	public CoverJsonCache(CoverCache coverCache, ObjectMapper objectMapper,
+	                      @Value("${app.covers.json-cache.max-size:64MB}") DataSize maxSize,
+	                      @Value("${app.covers.cache.ttl:1h}") Duration ttl,
+	                      @Value("${app.covers.cache.empty-ttl:30s}") Duration emptyTtl,
+	                      MeterRegistry meterRegistry) {
+		this.coverCache = coverCache;
+		this.objectMapper = objectMapper;
+		this.cache = Caffeine.newBuilder()
+				.maximumWeight(maxSize.toBytes())
+				.weigher((String gameUuid, byte[] fragment) -> fragment.length + 1)
+				.expireAfter(Expiry.writing((String gameUuid, byte[] fragment) -> fragment.length == 0 ? emptyTtl : ttl))
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "game_covers_json");
+	}
+
+	public CoverJson getCoverJson(String gameUuid) {
+		return getCoverJson(List.of(gameUuid));
+	}
+
+	/**
+	 * Returns the covers of the given games in request order; duplicate uuids are returned once.
+	 */
+	public CoverJson getCoverJson(Collection<String> gameUuids) {
+		Set<String> keys = new LinkedHashSet<>(gameUuids);
+		Map<String, byte[]> fragments = cache.getAll(keys, this::serializeAll);
+		return new CoverJson(keys.stream().map(fragments::get).toList());
+	}
+
+	public void invalidate(Collection<String> gameUuids) {
+		cache.invalidateAll(gameUuids);
+	}
+
+	private Map<String, byte[]> serializeAll(Set<? extends String> gameUuids) {
+		Map<String, List<Cover>> coversByGameUuid = coverCache.getCovers(List.copyOf(gameUuids));
+		Map<String, byte[]> fragments = new HashMap<>(coversByGameUuid.size());
+		coversByGameUuid.forEach((gameUuid, covers) -> fragments.put(gameUuid, serialize(covers)));
+		return fragments;
+	}
+
+	private byte[] serialize(List<Cover> covers) {
+		if (covers.isEmpty()) {
+			return EMPTY;
+		}
+		try {
+			byte[] array = objectMapper.writeValueAsBytes(covers);
+			return Arrays.copyOfRange(array, 1, array.length - 1);
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -1,27 +1,56 @@
 package com.janne.coveredv2.service;
 
-import com.janne.coveredv2.dtos.steamgriddbapi.GridDto;
+import com.janne.coveredv2.dtos.CoverExportRow;
+import com.janne.coveredv2.dtos.CoverJson;
+import com.janne.coveredv2.dtos.CoverSummary;
+import com.janne.coveredv2.dtos.CursorPage;
 import com.janne.coveredv2.entities.Cover;
 import com.janne.coveredv2.entities.Game;
 import com.janne.coveredv2.repositories.CoverRepository;
 import com.janne.coveredv2.repositories.GameRepository;
 import com.janne.coveredv2.service.apis.SteamGridDBApiService;
-import io.micrometer.core.instrument.MeterRegistry;
+import com.janne.coveredv2.service.ingestion.CoverFetchCompletion;
+import com.janne.coveredv2.service.ingestion.CoverFetchEventBus;
+import com.janne.coveredv2.service.ingestion.CoverFetchResult;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -30,166 +59,478 @@ import java.util.zip.ZipOutputStream;
 @Service
 public class CoverService {
 
+	private static final int EXPORT_LOOKUP_CHUNK_SIZE = 1000;
+	private static final int GRID_LOOKUP_CHUNK_SIZE = 1000;
+
 	private final SteamGridDBApiService steamGridDBApiService;
 	private final CoverRepository coverRepository;
 	private final GameRepository gameRepository;
+	private final ExportDownloadExecutor exportDownloadExecutor;
+	private final ImageDiskCache imageDiskCache;
+	private final CoverFetchEventBus coverFetchEventBus;
+	private final CoverCache coverCache;
+	private final CoverJsonCache coverJsonCache;
+	private final EntityCountService entityCountService;
+	@Value("${app.steamgriddb.missing-recheck-after:7d}")
+	private Duration steamGridDbMissingRecheckAfter;
+	@Value("${app.covers.stream.poll-interval:5s}")
+	private Duration streamPollInterval;
 
-	public CoverService(SteamGridDBApiService steamGridDBApiService, CoverRepository coverRepository, GameRepository gameRepository, MeterRegistry meterRegistry) {
+	public CoverService(SteamGridDBApiService steamGridDBApiService, CoverRepository coverRepository, GameRepository gameRepository,
+	                    ExportDownloadExecutor exportDownloadExecutor, ImageDiskCache imageDiskCache,
+	                    CoverFetchEventBus coverFetchEventBus, CoverCache coverCache,
+	                    CoverJsonCache coverJsonCache, EntityCountService entityCountService) {
 		this.steamGridDBApiService = steamGridDBApiService;
 		this.coverRepository = coverRepository;
 		this.gameRepository = gameRepository;
-
-		meterRegistry.gauge("app_cover_count", coverRepository, CoverRepository::count);
+		this.exportDownloadExecutor = exportDownloadExecutor;
+		this.imageDiskCache = imageDiskCache;
+		this.coverFetchEventBus = coverFetchEventBus;
+		this.coverCache = coverCache;
+		this.coverJsonCache = coverJsonCache;
+		this.entityCountService = entityCountService;
 	}
 
 	public List<Cover> getCoversFromGameId(String gameId) {
-		return coverRepository.getCoversByGameUuid(gameId);
+		return isUuid(gameId) ? coverCache.getCovers(gameId) : List.of();
 	}
 
-	public Mono<List<Cover>> fetchCoversFromSteamId(long steamId) {
-		return steamGridDBApiService.getSteamGridDbIdFromSteamAppId(steamId)
-				.flatMap(steamGridDBApiService::getAllGridsFromGridDbId)
-				.map(grids -> Arrays.stream(grids.toArray(GridDto[]::new))
-						.map(steamGridDBApiService::convertSteamGridDBCover)
-						.toList())
+	/**
+	 * Fetches all SteamGridDB grids of a game as (unsaved) covers.
+	 * - the SteamGridDB game id stored on the game is reused; otherwise it is looked up once and stored
+	 * - games recently found missing on SteamGridDB are skipped until the negative entry expires
+	 * - a 404 from SteamGridDB drops the stored SteamGridDB game id, stores a negative entry and yields a missing
+	 *   result, which leaves stored covers alone; the refresh lane claims the game again once the entry expired
+	 * - games fetched before are asked conditionally with the validators of their last complete listing;
+	 *   an unchanged listing yields a not-modified result
+	 */
+	public Mono<CoverFetchResult> fetchCoversForGame(Game game) {
+		return resolveSteamGridDbId(game)
+				.flatMap(steamGridDbId -> steamGridDBApiService.getAllGridsFromGridDbId(steamGridDbId, game.getGridsEtag(), game.getGridsLastModified()))
+				.map(listing -> listing.notModified()
+						? CoverFetchResult.notModified(game)
+						: CoverFetchResult.success(game,
+						listing.grids().stream().map(steamGridDBApiService::convertSteamGridDBCover).toList(),
+						listing.complete(), listing.etag(), listing.lastModified()))
+				.defaultIfEmpty(CoverFetchResult.missing(game))
 				.onErrorResume(ResponseStatusException.class, ex -> {
 					if (ex.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
-						return Mono.fromRunnable(() ->
-										gameRepository.findBySteamId(steamId).ifPresent(game -> {
-											log.info("SteamGridDB cover not found for game {}, setting steamGridDbMissing to true", game.getName());
-											game.setSteamGridDbMissing(true);
-											gameRepository.save(game);
-										}))
+						return Mono.fromRunnable(() -> {
+									log.info("SteamGridDB cover not found for game {}, marking it missing", game.getName());
+									gameRepository.markSteamGridDbMissing(game.getUuid(), System.currentTimeMillis());
+								})
 								.subscribeOn(Schedulers.boundedElastic())
-								.thenReturn(List.of());
+								.thenReturn(CoverFetchResult.missing(game));
 					}
 					return Mono.error(ex);
 				});
 	}
 
+	private Mono<Long> resolveSteamGridDbId(Game game) {
+		if (game.getSteamGridDbId() != null) {
+			return Mono.just(game.getSteamGridDbId());
+		}
+		Long missingCheckedAt = game.getSteamGridDbMissingCheckedAt();
+		if (Boolean.TRUE.equals(game.getSteamGridDbMissing()) && missingCheckedAt != null
+				&& System.currentTimeMillis() - missingCheckedAt < steamGridDbMissingRecheckAfter.toMillis()) {
+			log.debug("Game {} is known to be missing on SteamGridDB, skipping lookup", game.getName());
+			return Mono.empty();
+		}
+		return steamGridDBApiService.getSteamGridDbIdFromSteamAppId(game.getSteamId())
+				.flatMap(steamGridDbId -> Mono.fromCallable(() -> {
+									gameRepository.updateSteamGridDbId(game.getUuid(), steamGridDbId);
+									return steamGridDbId;
+								})
+								.subscribeOn(Schedulers.boundedElastic()));
+	}
+
+	/**
+	 * Inserts or updates covers keyed by their SteamGridDB grid id and returns the stored covers.
+	 * - existing rows of the given grid ids are loaded in chunked IN queries and compared in memory
+	 * - only new grids are inserted and only changed grids are updated; both are flushed in JDBC batches
+	 * - unchanged grids cause no write and do not invalidate cached covers
+	 * If the same grid id is given twice, the last occurrence wins.
+	 */
 	public List<Cover> saveCovers(Cover[] covers) {
-		return coverRepository.saveAll(Arrays.asList(covers));
+		Map<Long, Cover> coversByGridId = new LinkedHashMap<>();
+		for (Cover cover : covers) {
+			coversByGridId.put(cover.getSteamGridDbId(), cover);
+		}
+		Map<Long, Cover> existingByGridId = new HashMap<>();
+		List<Long> gridIds = List.copyOf(coversByGridId.keySet());
+		for (int from = 0; from < gridIds.size(); from += GRID_LOOKUP_CHUNK_SIZE) {
+			coverRepository.findBySteamGridDbIdIn(gridIds.subList(from, Math.min(from + GRID_LOOKUP_CHUNK_SIZE, gridIds.size())))
+					.forEach(cover -> existingByGridId.put(cover.getSteamGridDbId(), cover));
+		}
+
+		List<Cover> stored = new ArrayList<>(coversByGridId.size());
+		List<Cover> inserted = new ArrayList<>();
+		List<Cover> updated = new ArrayList<>();
+		Set<String> changedGameUuids = new HashSet<>();
+		for (Cover cover : coversByGridId.values()) {
+			Cover existing = existingByGridId.get(cover.getSteamGridDbId());
+			if (existing == null) {
+				inserted.add(cover);
+				stored.add(cover);
+				changedGameUuids.add(cover.getGameUuid());
+				continue;
+			}
+			if (!hasSameContent(existing, cover)) {
+				// A grid moved to another game changes the covers of both games
+				changedGameUuids.add(existing.getGameUuid());
+				changedGameUuids.add(cover.getGameUuid());
+				copyContent(cover, existing);
+				updated.add(existing);
+			}
+			stored.add(existing);
+		}
+		if (inserted.isEmpty() && updated.isEmpty()) {
+			return stored;
+		}
+		coverRepository.saveAll(inserted);
+		coverRepository.saveAll(updated);
+		entityCountService.coversCreated(inserted.size());
+		changedGameUuids.remove(null);
+		invalidateCachedCovers(changedGameUuids);
+		log.debug("Stored covers: {} inserted, {} updated, {} unchanged",
+				inserted.size(), updated.size(), stored.size() - inserted.size() - updated.size());
+		return stored;
+	}
+
+	private static boolean hasSameContent(Cover existing, Cover cover) {
+		return Objects.equals(existing.getGameUuid(), cover.getGameUuid())
+				&& Objects.equals(existing.getStyle(), cover.getStyle())
+				&& existing.getWidth() == cover.getWidth()
+				&& existing.getHeight() == cover.getHeight()
+				&& existing.isNsfw() == cover.isNsfw()
+				&& existing.isHumor() == cover.isHumor()
+				&& Objects.equals(existing.getMime(), cover.getMime())
+				&& Objects.equals(existing.getLanguage(), cover.getLanguage())
+				&& Objects.equals(existing.getThumb(), cover.getThumb())
+				&& Objects.equals(existing.getUrl(), cover.getUrl())
+				&& Objects.equals(existing.getAuthor(), cover.getAuthor());
+	}
+
+	private static void copyContent(Cover source, Cover target) {
+		target.setGameUuid(source.getGameUuid());
+		target.setStyle(source.getStyle());
+		target.setWidth(source.getWidth());
+		target.setHeight(source.getHeight());
+		target.setNsfw(source.isNsfw());
+		target.setHumor(source.isHumor());
+		target.setMime(source.getMime());
+		target.setLanguage(source.getLanguage());
+		target.setThumb(source.getThumb());
+		target.setUrl(source.getUrl());
+		target.setAuthor(source.getAuthor());
+	}
+
+	/**
+	 * Deletes the stored covers of the given games whose grid ids are no longer listed on SteamGridDB.
+	 *
+	 * @param listedGridIdsByGameUuid the complete current grid listing per game
+	 * @return the number of deleted covers
+	 */
+	public int deleteUnlistedCovers(Map<String, Set<Long>> listedGridIdsByGameUuid) {
+		if (listedGridIdsByGameUuid.isEmpty()) {
+			return 0;
+		}
+		List<Cover> unlisted = coverRepository.findByGameUuidIn(listedGridIdsByGameUuid.keySet()).stream()
+				.filter(cover -> !listedGridIdsByGameUuid.get(cover.getGameUuid()).contains(cover.getSteamGridDbId()))
+				.toList();
+		if (unlisted.isEmpty()) {
+			return 0;
+		}
+		coverRepository.deleteAllInBatch(unlisted);
+		entityCountService.coversDeleted(unlisted.size());
+		invalidateCachedCovers(unlisted.stream().map(Cover::getGameUuid).collect(Collectors.toSet()));
+		return unlisted.size();
+	}
+
+	/**
+	 * Drops the cached covers of the given games now and again after the current transaction completed,
+	 * so a concurrent read cannot put the pre-commit state back into the caches.
+	 */
+	private void invalidateCachedCovers(Set<String> gameUuids) {
+		coverCache.invalidate(gameUuids);
+		coverJsonCache.invalidate(gameUuids);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					coverCache.invalidate(gameUuids);
+					coverJsonCache.invalidate(gameUuids);
+				}
+			});
+		}
 	}
 
 	public Page<Cover> getAllCovers(Pageable pageable) {
 		return coverRepository.findAll(pageable);
 	}
 
+	/**
+	 * Keyset pagination ordered by uuid; every page costs one index range scan regardless of its depth.
+	 */
+	public CursorPage<Cover> getCoversAfter(String cursor, int size, boolean includeTotal) {
+		String after = CursorPage.decodeCursor(cursor);
+		// One extra row tells whether there is a next page without counting
+		Pageable limit = PageRequest.of(0, size + 1);
+		List<Cover> covers = after == null
+				? coverRepository.findAllByOrderByUuidAsc(limit)
+				: coverRepository.findByUuidGreaterThanOrderByUuidAsc(after, limit);
+		boolean hasNext = covers.size() > size;
+		List<Cover> content = hasNext ? covers.subList(0, size) : covers;
+		return CursorPage.<Cover>builder()
+				.content(content)
+				.nextCursor(hasNext ? CursorPage.encodeCursor(content.getLast().getUuid()) : null)
+				.totalElements(includeTotal ? entityCountService.getCoverCount() : null)
+				.build();
+	}
+
 	public List<Cover> getCoversFromGameIds(String[] gamesUuids) {
-		return coverRepository.findByGameUuidIn(Arrays.asList(gamesUuids));
+		Set<String> gameUuids = validUuids(Arrays.asList(gamesUuids));
+		Map<String, List<Cover>> coversByGameUuid = coverCache.getCovers(gameUuids);
+		return gameUuids.stream()
+				.flatMap(gameUuid -> coversByGameUuid.get(gameUuid).stream())
+				.toList();
 	}
 
 	/**
-	 * Builds a ZIP file (as bytes) structured as:
-	 * {steam_id}/library_600x900.jpg
-	 * For each provided cover UUID:
-	 * - load Cover; if missing -> skip with debug
-	 * - ensure cover.gameUuid present; load Game; ensure game.steamId present -> else skip with debug
-	 * - fetch image bytes from cover.url (via SteamGridDBApiService); on 404/other error -> skip with debug
-	 * - add to ZIP under "<steamId>/library_600x900.jpg" (always .jpg as requested)
+	 * Slim covers of the given games, reading only the summary columns instead of whole entities.
 	 */
-	public byte[] buildCoversZip(List<String> coverUuids) {
-		if (coverUuids == null || coverUuids.isEmpty()) {
-			return emptyZip();
+	public List<CoverSummary> getCoverSummariesFromGameIds(String[] gamesUuids) {
+		Set<String> gameUuids = validUuids(Arrays.asList(gamesUuids));
+		if (gameUuids.isEmpty()) {
+			return List.of();
 		}
+		return coverRepository.findSummariesByGameUuidIn(gameUuids);
+	}
 
-		var executor = java.util.concurrent.Executors.newFixedThreadPool(
-				Math.max(2, Runtime.getRuntime().availableProcessors()),
-				r -> {
-					Thread t = new Thread(r, "covers-zip-worker");
-					t.setDaemon(true);
-					return t;
-				}
-		);
+	public CoverJson getCoverJsonFromGameId(String gameId) {
+		return isUuid(gameId) ? coverJsonCache.getCoverJson(gameId) : new CoverJson(List.of());
+	}
 
-		try {
-			List<CompletableFuture<CoverZipItem>> futures = coverUuids.stream()
-					.map(uuid -> CompletableFuture.supplyAsync(() -> toZipItem(uuid), executor))
-					.toList();
-
-			List<CoverZipItem> items = futures.stream()
-					.map(f -> {
-						try {
-							return f.get();
-						} catch (Exception e) {
-							log.debug("Skipping cover due to async error", e);
-							return null;
-						}
-					})
-					.filter(i -> i != null && i.imageBytes != null && i.imageBytes.length > 0)
-					.toList();
-
-			try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			     ZipOutputStream zos = new ZipOutputStream(baos)) {
-				for (CoverZipItem item : items) {
-					String path = item.steamId + "/" + item.capsuleFilename;
-					ZipEntry entry = new ZipEntry(path);
-					zos.putNextEntry(entry);
-					zos.write(item.imageBytes);
-					zos.closeEntry();
+	/**
+	 * Same covers as {@link #getCoversFromGameIds(String[])}, assembled from pre-serialized JSON fragments.
+	 */
+	public CoverJson getCoverJsonFromGameIds(String[] gamesUuids) {
+		return coverJsonCache.getCoverJson(validUuids(Arrays.asList(gamesUuids)));
+	}
+
+	/**
+	 * Emits one completion per requested game and completes once every game is resolved.
+	 * - subscribes to the {@link CoverFetchEventBus} before reading the current state, so no completion committed
+	 *   in between is missed
+	 * - games that already have covers (or are dead-lettered, or do not exist) are resolved from the database right away
+	 * - games still being ingested are resolved when ingestion publishes their completion; the event bus only sees
+	 *   this instance's ingestion, so unresolved games are also re-checked against the database every poll-interval
+	 *   to pick up games another replica fetched
+	 */
+	public Flux<CoverFetchCompletion> streamCoverCompletions(Collection<String> gameUuids) {
+		Set<String> requested = new HashSet<>(gameUuids);
+		if (requested.isEmpty()) {
+			return Flux.empty();
+		}
+		return Flux.defer(() -> {
+			Set<String> resolved = ConcurrentHashMap.newKeySet();
+			Flux<CoverFetchCompletion> live = coverFetchEventBus.completions()
+					.filter(completion -> requested.contains(completion.gameUuid()));
+			Flux<CoverFetchCompletion> current = Flux.interval(Duration.ZERO, streamPollInterval)
+					.onBackpressureDrop()
+					.concatMap(tick -> Mono.fromCallable(() -> loadCurrentCompletions(
+									requested.stream().filter(uuid -> !resolved.contains(uuid)).collect(Collectors.toSet()), tick == 0))
+							.subscribeOn(Schedulers.boundedElastic()), 1)
+					.flatMapIterable(completions -> completions);
+			return Flux.merge(live, current)
+					.filter(completion -> resolved.add(completion.gameUuid()))
+					.takeUntil(completion -> resolved.size() >= requested.size());
+		});
+	}
+
+	/**
+	 * Resolves the given games from the database. Later polls bypass the cover cache: their games were fetched by
+	 * another replica, whose cache invalidation never reached this instance.
+	 */
+	private List<CoverFetchCompletion> loadCurrentCompletions(Set<String> gameUuids, boolean useCoverCache) {
+		if (gameUuids.isEmpty()) {
+			return List.of();
+		}
+		Map<String, Game> gamesByUuid = new HashMap<>();
+		gameRepository.findAllById(validUuids(gameUuids)).forEach(game -> gamesByUuid.put(game.getUuid(), game));
+		List<String> fetchedUuids = gamesByUuid.values().stream()
+				.filter(game -> game.getTimeOfLastCoverFetch() != null)
+				.map(Game::getUuid)
+				.toList();
+		Map<String, List<Cover>> coversByGameUuid = useCoverCache || fetchedUuids.isEmpty()
+				? coverCache.getCovers(fetchedUuids)
+				: coverRepository.findByGameUuidIn(fetchedUuids).stream().collect(Collectors.groupingBy(Cover::getGameUuid));
+
+		List<CoverFetchCompletion> completions = new ArrayList<>();
+		for (String gameUuid : gameUuids) {
+			Game game = gamesByUuid.get(gameUuid);
+			if (game == null) {
+				completions.add(CoverFetchCompletion.unknown(gameUuid));
+			} else if (game.getTimeOfLastCoverFetch() != null) {
+				completions.add(CoverFetchCompletion.fetched(gameUuid, coversByGameUuid.getOrDefault(gameUuid, List.of())));
+			} else if (Boolean.TRUE.equals(game.getCoverFetchDeadLettered())) {
+				completions.add(CoverFetchCompletion.deadLettered(gameUuid));
+			}
+		}
+		return completions;
+	}
+
+	/**
+	 * Streams a ZIP file structured as:
+	 * {steam_id}/library_600x900.jpg
+	 * - all requested covers and their games are resolved up front in chunked join queries;
+	 *   unknown covers, covers without a game and games without steamId are skipped with debug
+	 * - read the image from the disk cache, or fetch it from cover.url (via SteamGridDBApiService) and cache it;
+	 *   on 404/other error -> skip with debug
+	 * - write to the ZIP under "<steamId>/<capsuleFilename>" as soon as the download completes
+	 * Entries are STORED since the images are already compressed. At most the per-export download
+	 * limit of images is held in memory at any time, independent of the number of requested covers.
+	 */
+	public void writeCoversZip(List<String> coverUuids, OutputStream outputStream) throws IOException {
+		// Closing the ZipOutputStream releases its native Deflater; the servlet stream stays open for the container
+		try (ZipOutputStream zos = new ZipOutputStream(StreamUtils.nonClosing(outputStream))) {
+			List<CoverExportRow> rows = resolveExportRows(coverUuids);
+			if (rows.isEmpty()) {
+				return;
+			}
+
+			try (ExportDownloadExecutor.Session<CoverZipItem> session = exportDownloadExecutor.openSession()) {
+				Set<String> writtenPaths = new HashSet<>();
+				Iterator<CoverExportRow> pending = rows.iterator();
+
+				while (pending.hasNext() || session.hasInFlight()) {
+					while (pending.hasNext() && session.hasCapacity()) {
+						CoverExportRow row = pending.next();
+						session.submit(() -> toZipItem(row));
+					}
+					CoverZipItem item = takeCompleted(session);
+					if (item != null && item.image != null && item.image.hasRemaining()) {
+						writeStoredEntry(zos, item, writtenPaths);
+					}
 				}
-				zos.finish();
-				return baos.toByteArray();
-			} catch (IOException e) {
-				log.debug("Failed to build ZIP", e);
-				return emptyZip();
 			}
-		} finally {
-			executor.shutdown();
 		}
 	}
 
-	private CoverZipItem toZipItem(String coverUuid) {
-		Optional<Cover> coverOpt = coverRepository.findById(coverUuid);
-		if (coverOpt.isEmpty()) {
-			log.debug("Cover uuid not found, skipping: {}", coverUuid);
-			return null;
+	private List<CoverExportRow> resolveExportRows(List<String> coverUuids) {
+		if (coverUuids == null || coverUuids.isEmpty()) {
+			return List.of();
+		}
+		List<String> distinctUuids = List.copyOf(validUuids(coverUuids));
+		Map<String, CoverExportRow> rowsByUuid = new HashMap<>();
+		for (int from = 0; from < distinctUuids.size(); from += EXPORT_LOOKUP_CHUNK_SIZE) {
+			List<String> chunk = distinctUuids.subList(from, Math.min(from + EXPORT_LOOKUP_CHUNK_SIZE, distinctUuids.size()));
+			coverRepository.findExportRows(chunk).forEach(row -> rowsByUuid.put(row.coverUuid(), row));
 		}
-		Cover cover = coverOpt.get();
 
-		if (cover.getGameUuid() == null || cover.getGameUuid().isBlank()) {
-			log.debug("Cover {} has no gameUuid, skipping", coverUuid);
-			return null;
+		List<CoverExportRow> rows = new ArrayList<>(rowsByUuid.size());
+		for (String uuid : distinctUuids) {
+			CoverExportRow row = rowsByUuid.get(uuid);
+			if (row == null) {
+				log.debug("Cover uuid not found or has no game, skipping: {}", uuid);
+			} else if (row.steamId() == null) {
+				log.debug("Game of cover {} has no steamId, skipping", uuid);
+			} else {
+				rows.add(row);
+			}
 		}
+		return rows;
+	}
 
-		Optional<Game> gameOpt = gameRepository.findById(cover.getGameUuid());
-		if (gameOpt.isEmpty()) {
-			log.debug("Game not found for cover {}, gameUuid={}, skipping", coverUuid, cover.getGameUuid());
+	private CoverZipItem takeCompleted(ExportDownloadExecutor.Session<CoverZipItem> session) throws IOException {
+		try {
+			return session.take();
+		} catch (ExecutionException e) {
+			log.debug("Skipping cover due to async error", e);
 			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while exporting covers");
 		}
-		Game game = gameOpt.get();
+	}
 
-		if (game.getSteamId() == null) {
-			log.debug("Game {} has no steamId, skipping cover {}", game.getUuid(), coverUuid);
-			return null;
+	private void writeStoredEntry(ZipOutputStream zos, CoverZipItem item, Set<String> writtenPaths) throws IOException {
+		String path = item.steamId + "/" + item.capsuleFilename;
+		if (!writtenPaths.add(path)) {
+			log.debug("Duplicate ZIP entry {}, skipping", path);
+			return;
 		}
+		CRC32 crc = new CRC32();
+		crc.update(item.image.duplicate());
 
-		byte[] imageBytes = steamGridDBApiService.downloadImageBytes(cover.getUrl()).block();
-		if (imageBytes == null || imageBytes.length == 0) {
-			// Already logged inside the API service
+		int size = item.image.remaining();
+		ZipEntry entry = new ZipEntry(path);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(size);
+		entry.setCompressedSize(size);
+		entry.setCrc(crc.getValue());
+		zos.putNextEntry(entry);
+		Channels.newChannel(zos).write(item.image.duplicate());
+		zos.closeEntry();
+		zos.flush();
+	}
+
+	private CoverZipItem toZipItem(CoverExportRow row) {
+		ByteBuffer image = loadImage(row.url());
+		if (image == null) {
 			return null;
 		}
 
 		CoverZipItem item = new CoverZipItem();
-		item.steamId = game.getSteamId();
-		item.imageBytes = imageBytes;
-		item.capsuleFilename = game.getCapsuleFilename();
+		item.steamId = row.steamId();
+		item.image = image;
+		item.capsuleFilename = row.capsuleFilename();
 		return item;
 	}
 
-	private byte[] emptyZip() {
-		try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		     ZipOutputStream zos = new ZipOutputStream(baos)) {
-			zos.finish();
-			return baos.toByteArray();
-		} catch (IOException e) {
-			return new byte[0];
+	private ByteBuffer loadImage(String url) {
+		Optional<ByteBuffer> cached = imageDiskCache.get(url);
+		if (cached.isPresent()) {
+			return cached.get();
+		}
+		byte[] imageBytes = steamGridDBApiService.downloadImageBytes(url).block();
+		if (imageBytes == null || imageBytes.length == 0) {
+			// Already logged inside the API service
+			return null;
 		}
+		imageDiskCache.put(url, imageBytes);
+		return ByteBuffer.wrap(imageBytes);
 	}
 
 	private static class CoverZipItem {
 		Long steamId;
-		byte[] imageBytes;
+		ByteBuffer image;
 		String capsuleFilename;
 	}
+
+	/**
+	 * Ids sent by clients, deduplicated in request order and without values that are not uuids. Such ids cannot
+	 * match any row and would fail when bound to a uuid column.
+	 */
+	private static Set<String> validUuids(Collection<String> ids) {
+		Set<String> valid = new LinkedHashSet<>();
+		for (String id : ids) {
+			if (isUuid(id)) {
+				valid.add(id);
+			}
+		}
+		return valid;
+	}
+
+	private static boolean isUuid(String id) {
+		if (id == null) {
+			return false;
+		}
+		try {
+			UUID.fromString(id);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
 }
@@ -0,0 +1,86 @@
+package com.janne.coveredv2.service;
+
+import com.janne.coveredv2.repositories.CoverRepository;
+import com.janne.coveredv2.repositories.GameRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Game and cover counts for the app_game_count and app_cover_count gauges and the include_total option of the
+ * scroll endpoints, kept in memory so neither a scrape nor a page request runs count(*) queries.
+ * - the write paths report created and deleted rows; counts change once the writing transaction committed
+ * - a slow scheduled reconcile replaces the counts with count(*) results, which corrects drift and
+ *   picks up rows written by other replicas
+ */
+@Slf4j
+@Service
+public class EntityCountService {
+
+	private final GameRepository gameRepository;
+	private final CoverRepository coverRepository;
+	private final AtomicLong games = new AtomicLong();
+	private final AtomicLong covers = new AtomicLong();
+
+	public EntityCountService(GameRepository gameRepository, CoverRepository coverRepository, MeterRegistry meterRegistry) {
+		this.gameRepository = gameRepository;
+		this.coverRepository = coverRepository;
+
+		Gauge.builder("app_game_count", games, AtomicLong::get).register(meterRegistry);
+		Gauge.builder("app_cover_count", covers, AtomicLong::get).register(meterRegistry);
+	}
+
+	public long getGameCount() {
+		return games.get();
+	}
+
+	public long getCoverCount() {
+		return covers.get();
+	}
+
+	public void gamesCreated(long count) {
+		addAfterCommit(games, count);
+	}
+
+	public void coversCreated(long count) {
+		addAfterCommit(covers, count);
+	}
+
+	public void coversDeleted(long count) {
+		addAfterCommit(covers, -count);
+	}
+
+	@Scheduled(initialDelayString = "${app.metrics.count-reconcile.initial-delay:0s}",
+			fixedDelayString = "${app.metrics.count-reconcile.interval:15m}")
+	public void reconcile() {
+		try {
+			games.set(gameRepository.count());
+			covers.set(coverRepository.count());
+		} catch (DataAccessException e) {
+			log.warn("Failed to reconcile entity counts, keeping the incremental ones", e);
+		}
+	}
+
+	private static void addAfterCommit(AtomicLong counter, long count) {
+		if (count == 0) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			counter.addAndGet(count);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				counter.addAndGet(count);
+			}
+		});
+	}
+}
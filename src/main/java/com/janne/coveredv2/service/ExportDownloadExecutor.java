@@ -0,0 +1,131 @@
+package com.janne.coveredv2.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application-wide executor for export image downloads.
+ * - tasks run on virtual threads, so blocking on a download does not pin a platform thread
+ * - a fair global semaphore caps concurrent downloads across all exports; waiting tasks are
+ * served in arrival order
+ * - each export opens a {@link Session} that caps its own in-flight tasks, so one large export
+ * cannot occupy the whole global queue and concurrent exports are interleaved
+ */
+@Slf4j
+@Service
+public class ExportDownloadExecutor {
+
+	private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+			Thread.ofVirtual().name("export-download-", 0).factory());
+	private final Semaphore globalPermits;
+	private final int perExportConcurrency;
+	private final Timer queueWaitTimer;
+	private final Timer downloadTimer;
+
+	public ExportDownloadExecutor(@Value("${app.export.download.global-concurrency:32}") int globalConcurrency,
+	                              @Value("${app.export.download.per-export-concurrency:8}") int perExportConcurrency,
+	                              MeterRegistry meterRegistry) {
+		this.globalPermits = new Semaphore(Math.max(1, globalConcurrency), true);
+		this.perExportConcurrency = Math.max(1, perExportConcurrency);
+
+		this.queueWaitTimer = Timer.builder("app_export_download_queue_wait")
+				.description("Time an export download waits for a global download slot")
+				.register(meterRegistry);
+		this.downloadTimer = Timer.builder("app_export_download_duration")
+				.description("Time spent downloading a single export image")
+				.register(meterRegistry);
+		Gauge.builder("app_export_download_active", globalPermits,
+						permits -> Math.max(1, globalConcurrency) - permits.availablePermits())
+				.register(meterRegistry);
+		Gauge.builder("app_export_download_waiting", globalPermits, Semaphore::getQueueLength)
+				.register(meterRegistry);
+	}
+
+	public <T> Session<T> openSession() {
+		return new Session<>();
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private <T> Callable<T> throttled(Callable<T> task) {
+		long queuedAt = System.nanoTime();
+		return () -> {
+			globalPermits.acquire();
+			queueWaitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+			try {
+				return downloadTimer.recordCallable(task);
+			} finally {
+				globalPermits.release();
+			}
+		};
+	}
+
+	/**
+	 * Per-export view of the executor. Not thread-safe; meant to be driven by the single thread
+	 * that writes the export.
+	 */
+	public class Session<T> implements AutoCloseable {
+		private final CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+		private final Set<Future<T>> inFlight = new HashSet<>();
+
+		public boolean hasCapacity() {
+			return inFlight.size() < perExportConcurrency;
+		}
+
+		/**
+		 * Queues the task for a global download slot. Callers are expected to check
+		 * {@link #hasCapacity()} first, otherwise the per-export limit is rejected.
+		 */
+		public void submit(Callable<T> task) {
+			if (!hasCapacity()) {
+				throw new IllegalStateException("Export already has " + inFlight.size() + " downloads in flight");
+			}
+			inFlight.add(completionService.submit(throttled(task)));
+		}
+
+		public boolean hasInFlight() {
+			return !inFlight.isEmpty();
+		}
+
+		/**
+		 * Waits for the next completed task of this export, in completion order.
+		 */
+		public T take() throws InterruptedException, ExecutionException {
+			Future<T> future = completionService.take();
+			inFlight.remove(future);
+			return future.get();
+		}
+
+		/**
+		 * Cancels downloads that are still queued or running, e.g. when the client went away.
+		 */
+		@Override
+		public void close() {
+			if (!inFlight.isEmpty()) {
+				log.debug("Export session closed with {} downloads still in flight, cancelling", inFlight.size());
+				inFlight.forEach(future -> future.cancel(true));
+				inFlight.clear();
+			}
+		}
+	}
+}
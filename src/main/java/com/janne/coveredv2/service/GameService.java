@@ -1,83 +1,63 @@
 package com.janne.coveredv2.service;
 
+import com.janne.coveredv2.dtos.CursorPage;
 import com.janne.coveredv2.dtos.GameWithPlaytime;
 import com.janne.coveredv2.dtos.steamapi.SharedLibraryAppsDto;
 import com.janne.coveredv2.dtos.steamapi.UserGameLibraryDto;
-import com.janne.coveredv2.entities.Cover;
 import com.janne.coveredv2.entities.Game;
 import com.janne.coveredv2.repositories.GameRepository;
 import com.janne.coveredv2.service.apis.SteamApiService;
-import io.micrometer.core.instrument.MeterRegistry;
+import com.janne.coveredv2.service.ingestion.CoverIngestionQueue;
+import com.janne.coveredv2.service.ingestion.GamesCreatedEvent;
+import com.janne.coveredv2.service.search.GameSearchIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
-import reactor.util.function.Tuple3;
-import reactor.util.function.Tuples;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class GameService {
 
+	private static final int STEAM_ID_LOOKUP_CHUNK_SIZE = 1000;
+	private static final int MAX_UPSERT_ATTEMPTS = 3;
+
 	private final GameRepository gameRepository;
 	private final SteamApiService steamApiService;
-	private final CoverService coverService;
-	@Value("${app.steamgriddb.concurrency_count:50}")
-	private int concurrencyCount;
+	private final TransactionTemplate transactionTemplate;
+	private final ApplicationEventPublisher eventPublisher;
+	private final CoverIngestionQueue coverIngestionQueue;
+	private final GameSearchIndex gameSearchIndex;
+	private final EntityCountService entityCountService;
+	@Value("${app.games.stream-batch-size:200}")
+	private int streamBatchSize;
 
-	public GameService(GameRepository gameRepository, SteamApiService steamApiService, CoverService coverService, MeterRegistry meterRegistry) {
+	public GameService(GameRepository gameRepository, SteamApiService steamApiService, TransactionTemplate transactionTemplate,
+	                   ApplicationEventPublisher eventPublisher, CoverIngestionQueue coverIngestionQueue, GameSearchIndex gameSearchIndex,
+	                   EntityCountService entityCountService) {
 		this.gameRepository = gameRepository;
 		this.steamApiService = steamApiService;
-		this.coverService = coverService;
-
-		meterRegistry.gauge("app_game_count", gameRepository, GameRepository::count);
-	}
-
-	@Scheduled(fixedDelay = 1, timeUnit = java.util.concurrent.TimeUnit.SECONDS)
-	private void fetchUnfetchedGames() {
-		List<Game> unfetchedGames = gameRepository.getGamesWithoutFetchedCovers();
-		if (!unfetchedGames.isEmpty()) {
-			log.info("Found {} games without fetched covers", unfetchedGames.size());
-
-			int concurrency = Math.min(concurrencyCount, unfetchedGames.size());
-
-			Flux.fromIterable(unfetchedGames)
-					.flatMap(game ->
-									coverService.fetchCoversFromSteamId(game.getSteamId())
-											.doOnSubscribe(s -> log.info("Fetching covers for game {}", game.getName()))
-											.map(covers -> Tuples.of(game, covers, true))
-											.onErrorResume(ex -> Mono.just(Tuples.of(game, List.of(), false))),
-							concurrency
-					)
-					.doOnNext((Tuple3<Game, List<Cover>, Boolean> tuple) -> {
-						Game game = tuple.getT1();
-						List<Cover> covers = tuple.getT2();
-						if (!tuple.getT3()) {
-							log.warn("Failed to fetch covers for game {}", game.getName());
-							return;
-						}
-
-						Game reloadedGame = gameRepository.findBySteamId(game.getSteamId()).orElseThrow();
-						reloadedGame.setTimeOfLastCoverFetch(System.currentTimeMillis());
-						covers.forEach(cover -> cover.setGameUuid(reloadedGame.getUuid()));
-						if (!covers.isEmpty()) {
-							coverService.saveCovers(covers.toArray(Cover[]::new));
-						}
-						gameRepository.save(reloadedGame);
-						log.info("Fetched {} covers for game {}", covers.size(), reloadedGame.getName());
-					})
-					.then()
-					.block(); // Block until all parallel fetches complete
-		}
+		this.transactionTemplate = transactionTemplate;
+		this.eventPublisher = eventPublisher;
+		this.coverIngestionQueue = coverIngestionQueue;
+		this.gameSearchIndex = gameSearchIndex;
+		this.entityCountService = entityCountService;
 	}
 
 	public Game[] getAllGames() {
@@ -92,70 +72,220 @@ public class GameService {
 		if (search == null || search.isBlank()) {
 			return gameRepository.findAll(pageable);
 		}
-		return gameRepository.findByNameContainingIgnoreCase(search.trim(), pageable);
+		// Results are ranked by relevance, so the requested sort is ignored while the index is available
+		return gameSearchIndex.search(search, pageable.getOffset(), pageable.getPageSize())
+				.<Page<Game>>map(result -> new PageImpl<>(loadInOrder(result.uuids()), pageable, result.total()))
+				.orElseGet(() -> gameRepository.findByNameContainingIgnoreCase(search.trim(), pageable));
+	}
+
+	/**
+	 * Keyset pagination ordered by uuid; every page costs one index range scan regardless of its depth.
+	 */
+	public CursorPage<Game> getGamesAfter(String cursor, int size, boolean includeTotal) {
+		String after = CursorPage.decodeCursor(cursor);
+		// One extra row tells whether there is a next page without counting
+		Pageable limit = PageRequest.of(0, size + 1);
+		List<Game> games = after == null
+				? gameRepository.findAllByOrderByUuidAsc(limit)
+				: gameRepository.findByUuidGreaterThanOrderByUuidAsc(after, limit);
+		boolean hasNext = games.size() > size;
+		List<Game> content = hasNext ? games.subList(0, size) : games;
+		return CursorPage.<Game>builder()
+				.content(content)
+				.nextCursor(hasNext ? CursorPage.encodeCursor(content.getLast().getUuid()) : null)
+				.totalElements(includeTotal ? entityCountService.getGameCount() : null)
+				.build();
 	}
 
 	public Game saveGame(Game game) {
-		return gameRepository.save(game);
+		boolean created = game.getUuid() == null;
+		Game saved = gameRepository.save(game);
+		if (created) {
+			entityCountService.gamesCreated(1);
+		}
+		gameSearchIndex.index(saved);
+		return saved;
 	}
 
-	public GameWithPlaytime[] getGamesFromPlayer(Long steamUserId) {
-		UserGameLibraryDto userGameLibraryDto = steamApiService.getUserGameLibrary(steamUserId).block();
+	private List<Game> loadInOrder(List<String> uuids) {
+		Map<String, Game> gamesByUuid = new HashMap<>(uuids.size());
+		gameRepository.findAllById(uuids).forEach(game -> gamesByUuid.put(game.getUuid(), game));
+		return uuids.stream()
+				.map(gamesByUuid::get)
+				.filter(Objects::nonNull)
+				.toList();
+	}
 
-		if (userGameLibraryDto == null) {
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Steam API response was null");
-		}
-		List<UserGameLibraryDto.Game> games = userGameLibraryDto.getResponse().getGames();
-		if (games == null) {
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Steam API response was missing games");
-		}
+	public GameWithPlaytime[] getGamesFromPlayer(Long steamUserId) {
+		List<GameWithPlaytime> result = new ArrayList<>();
+		resolveInBatches(steamUserId, getUserGames(steamUserId), PLAYER_LIBRARY, Integer.MAX_VALUE, result::addAll);
+		return result.toArray(GameWithPlaytime[]::new);
+	}
 
-		return games.stream()
-				.map(game -> GameWithPlaytime.builder()
-						.game(getGameFromSteamId(game.getAppid(), game.getName(), game.getCapsuleFilename()))
-						.playtime(game.getPlaytimeForever())
-						.build()
-				)
-				.toArray(GameWithPlaytime[]::new);
+	/**
+	 * Like {@link #getGamesFromPlayer(Long)}, but hands the games to the consumer batch by batch as soon as
+	 * each batch is resolved, so neither the first byte nor the whole library has to wait for the slowest batch.
+	 */
+	public void streamGamesFromPlayer(Long steamUserId, Consumer<List<GameWithPlaytime>> batchConsumer) {
+		resolveInBatches(steamUserId, getUserGames(steamUserId), PLAYER_LIBRARY, streamBatchSize, batchConsumer);
 	}
 
 	public GameWithPlaytime[] getGameFromSteamFamilyLibrary(Long steamUserId, String userApiToken) {
+		List<GameWithPlaytime> result = new ArrayList<>();
+		streamGamesFromSteamFamilyLibrary(steamUserId, userApiToken, Integer.MAX_VALUE, result::addAll);
+		return result.toArray(GameWithPlaytime[]::new);
+	}
+
+	public void streamGamesFromSteamFamilyLibrary(Long steamUserId, String userApiToken, Consumer<List<GameWithPlaytime>> batchConsumer) {
+		streamGamesFromSteamFamilyLibrary(steamUserId, userApiToken, streamBatchSize, batchConsumer);
+	}
+
+	private void streamGamesFromSteamFamilyLibrary(Long steamUserId, String userApiToken, int batchSize,
+	                                               Consumer<List<GameWithPlaytime>> batchConsumer) {
+		List<SharedLibraryAppsDto.App> appIds;
 		try {
 			Long familyId = steamApiService.getSteamFamilyIdForUser(steamUserId, userApiToken).block();
 			if (familyId == null) {
 				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No Steam family group found for user");
 			}
 
-			List<SharedLibraryAppsDto.App> appIds = steamApiService.getUserFamilyGameIds(familyId, userApiToken);
+			appIds = steamApiService.getUserFamilyGameIds(familyId, userApiToken);
 			if (appIds == null || appIds.isEmpty()) {
 				log.info("No shared library apps found for familyId {}", familyId);
-				return new GameWithPlaytime[0];
+				return;
 			}
+		} catch (Exception e) {
+			resolveInBatches(steamUserId, getUserGames(steamUserId), PLAYER_LIBRARY, batchSize, batchConsumer);
+			return;
+		}
+		resolveInBatches(steamUserId, appIds, FAMILY_LIBRARY, batchSize, batchConsumer);
+	}
+
+	private List<UserGameLibraryDto.Game> getUserGames(Long steamUserId) {
+		UserGameLibraryDto userGameLibraryDto = steamApiService.getUserGameLibrary(steamUserId).block();
 
-			return appIds.stream()
-					.map(app -> GameWithPlaytime.builder()
-							.game(getGameFromSteamId(app.getAppid(), app.getName(), app.getCapsuleFilename()))
-							.playtime(app.getRtPlaytime())
+		if (userGameLibraryDto == null) {
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Steam API response was null");
+		}
+		List<UserGameLibraryDto.Game> games = userGameLibraryDto.getResponse().getGames();
+		if (games == null) {
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Steam API response was missing games");
+		}
+		return games;
+	}
+
+	/**
+	 * Resolves library entries to games batch by batch; every batch is one upsert and is prioritized for
+	 * cover ingestion before it is handed to the consumer. The whole library counts as one request of the user
+	 * towards popularity.
+	 */
+	private <T> void resolveInBatches(Long steamUserId, List<T> entries, LibraryMapping<T> mapping, int batchSize,
+	                                  Consumer<List<GameWithPlaytime>> batchConsumer) {
+		boolean countsTowardsPopularity = coverIngestionQueue.countsTowardsPopularity(steamUserId);
+		for (int from = 0; from < entries.size(); from += batchSize) {
+			List<T> batch = entries.subList(from, Math.min(from + batchSize, entries.size()));
+			Map<Long, Game> gamesBySteamId = getOrCreateGames(batch.stream().map(mapping::toSteamApp).toList());
+			coverIngestionQueue.requestCoverFetch(gamesBySteamId.values(), countsTowardsPopularity);
+			batchConsumer.accept(batch.stream()
+					.map(entry -> GameWithPlaytime.builder()
+							.game(gamesBySteamId.get(mapping.toSteamApp(entry).appid()))
+							.playtime(mapping.playtime(entry))
 							.build()
 					)
-					.toArray(GameWithPlaytime[]::new);
-		} catch (Exception e) {
-			return getGamesFromPlayer(steamUserId);
+					.toList());
+		}
+	}
+
+	public Game loadGame(Long steamGameId, String gameName, String capsuleFilename) {
+		return getOrCreateGames(List.of(new SteamApp(steamGameId, gameName, capsuleFilename))).get(steamGameId);
+	}
+
+	/**
+	 * Resolves the given Steam apps to games, creating the missing ones.
+	 * - known games are loaded with chunked steamId IN (...) queries
+	 * - missing games are inserted in one transaction using JDBC batching
+	 * - if another request inserted one of the games concurrently, the unique index on steam_id rejects
+	 *   the batch and the whole upsert is retried against the now existing rows
+	 * - created games are announced with a {@link GamesCreatedEvent} once committed
+	 */
+	private Map<Long, Game> getOrCreateGames(List<SteamApp> apps) {
+		Map<Long, SteamApp> appsBySteamId = new LinkedHashMap<>();
+		apps.stream()
+				.filter(app -> app.appid() != null)
+				.forEach(app -> appsBySteamId.putIfAbsent(app.appid(), app));
+
+		for (int attempt = 1; ; attempt++) {
+			try {
+				UpsertResult result = transactionTemplate.execute(status -> upsertGames(appsBySteamId));
+				if (!result.createdGames().isEmpty()) {
+					eventPublisher.publishEvent(new GamesCreatedEvent(result.createdGames()));
+				}
+				return result.gamesBySteamId();
+			} catch (DataIntegrityViolationException e) {
+				if (attempt >= MAX_UPSERT_ATTEMPTS) {
+					throw e;
+				}
+				log.debug("Concurrent game insert detected, retrying upsert (attempt {})", attempt);
+			}
 		}
 	}
 
-	private Game getGameFromSteamId(Long appid, String gameName, String capsuleFilename) {
-		Optional<Game> existing = gameRepository.findBySteamId(appid);
-		if (existing.isPresent()) {
-			return existing.get();
+	private UpsertResult upsertGames(Map<Long, SteamApp> appsBySteamId) {
+		Map<Long, Game> gamesBySteamId = new HashMap<>(appsBySteamId.size());
+		List<Long> steamIds = new ArrayList<>(appsBySteamId.keySet());
+		for (int from = 0; from < steamIds.size(); from += STEAM_ID_LOOKUP_CHUNK_SIZE) {
+			List<Long> chunk = steamIds.subList(from, Math.min(from + STEAM_ID_LOOKUP_CHUNK_SIZE, steamIds.size()));
+			gameRepository.findBySteamIdIn(chunk).forEach(game -> gamesBySteamId.put(game.getSteamId(), game));
 		}
-		Game game = steamApiService.buildGameFromSteamGameId(appid, gameName, capsuleFilename);
 
-		return gameRepository.save(game);
+		List<Game> createdGames = List.of();
+		List<Game> missingGames = appsBySteamId.values().stream()
+				.filter(app -> !gamesBySteamId.containsKey(app.appid()))
+				.map(app -> steamApiService.buildGameFromSteamGameId(app.appid(), app.name(), app.capsuleFilename()))
+				.toList();
+		if (!missingGames.isEmpty()) {
+			createdGames = gameRepository.saveAll(missingGames);
+			gameRepository.flush();
+			createdGames.forEach(game -> gamesBySteamId.put(game.getSteamId(), game));
+			entityCountService.gamesCreated(createdGames.size());
+			log.info("Created {} new games", createdGames.size());
+		}
+		return new UpsertResult(gamesBySteamId, createdGames);
 	}
 
-	public Game loadGame(Long steamGameId, String gameName, String capsuleFilename) {
-		Game game = getGameFromSteamId(steamGameId, gameName, capsuleFilename);
-		return gameRepository.save(game);
+	private interface LibraryMapping<T> {
+		SteamApp toSteamApp(T entry);
+
+		long playtime(T entry);
+	}
+
+	private static final LibraryMapping<UserGameLibraryDto.Game> PLAYER_LIBRARY = new LibraryMapping<>() {
+		@Override
+		public SteamApp toSteamApp(UserGameLibraryDto.Game game) {
+			return new SteamApp(game.getAppid(), game.getName(), game.getCapsuleFilename());
+		}
+
+		@Override
+		public long playtime(UserGameLibraryDto.Game game) {
+			return game.getPlaytimeForever();
+		}
+	};
+
+	private static final LibraryMapping<SharedLibraryAppsDto.App> FAMILY_LIBRARY = new LibraryMapping<>() {
+		@Override
+		public SteamApp toSteamApp(SharedLibraryAppsDto.App app) {
+			return new SteamApp(app.getAppid(), app.getName(), app.getCapsuleFilename());
+		}
+
+		@Override
+		public long playtime(SharedLibraryAppsDto.App app) {
+			return app.getRtPlaytime() == null ? 0 : app.getRtPlaytime();
+		}
+	};
+
+	private record SteamApp(Long appid, String name, String capsuleFilename) {
+	}
+
+	private record UpsertResult(Map<Long, Game> gamesBySteamId, List<Game> createdGames) {
 	}
 }
@@ -0,0 +1,232 @@
+package com.janne.coveredv2.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Local disk cache for downloaded cover images.
+ * - files are named by the SHA-256 of the image URL, so the cache directory can be shared across restarts
+ * - total size is bounded; least recently used files are evicted first
+ * - hits are memory-mapped instead of being copied onto the heap
+ * - the LRU order is persisted through the file modification time and rebuilt on startup
+ */
+@Slf4j
+@Service
+public class ImageDiskCache {
+
+	private static final String FILE_SUFFIX = ".img";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final boolean enabled;
+	private final Path directory;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private long totalBytes;
+
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter evictions;
+
+	public ImageDiskCache(@Value("${app.export.image-cache.enabled:true}") boolean enabled,
+	                      @Value("${app.export.image-cache.directory:${java.io.tmpdir}/covered-image-cache}") Path directory,
+	                      @Value("${app.export.image-cache.max-size:2GB}") DataSize maxSize,
+	                      MeterRegistry meterRegistry) {
+		this.enabled = enabled;
+		this.directory = directory;
+		this.maxBytes = maxSize.toBytes();
+
+		this.hits = meterRegistry.counter("app_image_cache_hits");
+		this.misses = meterRegistry.counter("app_image_cache_misses");
+		this.evictions = meterRegistry.counter("app_image_cache_evictions");
+		Gauge.builder("app_image_cache_bytes", this, ImageDiskCache::getTotalBytes).register(meterRegistry);
+		Gauge.builder("app_image_cache_entries", this, ImageDiskCache::getEntryCount).register(meterRegistry);
+	}
+
+	@PostConstruct
+	void loadExistingEntries() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			Files.createDirectories(directory);
+			List<Path> files;
+			try (Stream<Path> stream = Files.list(directory)) {
+				files = stream.toList();
+			}
+			files.stream()
+					.filter(path -> path.getFileName().toString().endsWith(TEMP_SUFFIX))
+					.forEach(this::deleteQuietly);
+			files.stream()
+					.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX))
+					.sorted(Comparator.comparing(this::lastModified))
+					.forEach(path -> {
+						String name = path.getFileName().toString();
+						long size = sizeOf(path);
+						synchronized (this) {
+							entries.put(name.substring(0, name.length() - FILE_SUFFIX.length()), size);
+							totalBytes += size;
+						}
+					});
+			evictIfNeeded();
+			log.info("Image cache at {} loaded with {} entries ({} bytes)", directory, getEntryCount(), getTotalBytes());
+		} catch (IOException e) {
+			log.warn("Failed to initialise image cache at {}, continuing without existing entries", directory, e);
+		}
+	}
+
+	/**
+	 * Returns the cached image as a read-only memory-mapped buffer, or empty on a miss.
+	 */
+	public Optional<ByteBuffer> get(String url) {
+		if (!enabled || url == null) {
+			return Optional.empty();
+		}
+		String key = keyOf(url);
+		synchronized (this) {
+			if (!entries.containsKey(key)) {
+				misses.increment();
+				return Optional.empty();
+			}
+		}
+		Path path = pathOf(key);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			hits.increment();
+			return Optional.of(buffer);
+		} catch (NoSuchFileException e) {
+			remove(key);
+		} catch (IOException e) {
+			log.debug("Failed to read cached image {}, treating as miss", path, e);
+			remove(key);
+			deleteQuietly(path);
+		}
+		misses.increment();
+		return Optional.empty();
+	}
+
+	public void put(String url, byte[] bytes) {
+		if (!enabled || url == null || bytes == null || bytes.length == 0 || bytes.length > maxBytes) {
+			return;
+		}
+		String key = keyOf(url);
+		Path target = pathOf(key);
+		Path temp = directory.resolve(key + "-" + UUID.randomUUID() + TEMP_SUFFIX);
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			log.debug("Failed to write image {} to cache", url, e);
+			deleteQuietly(temp);
+			return;
+		}
+		synchronized (this) {
+			Long previous = entries.put(key, (long) bytes.length);
+			totalBytes += bytes.length - (previous == null ? 0 : previous);
+		}
+		evictIfNeeded();
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	private void evictIfNeeded() {
+		while (true) {
+			String key;
+			synchronized (this) {
+				if (totalBytes <= maxBytes || entries.isEmpty()) {
+					return;
+				}
+				Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+				Map.Entry<String, Long> entry = eldest.next();
+				key = entry.getKey();
+				totalBytes -= entry.getValue();
+				eldest.remove();
+			}
+			deleteQuietly(pathOf(key));
+			evictions.increment();
+		}
+	}
+
+	private synchronized void remove(String key) {
+		Long size = entries.remove(key);
+		if (size != null) {
+			totalBytes -= size;
+		}
+	}
+
+	private Path pathOf(String key) {
+		return directory.resolve(key + FILE_SUFFIX);
+	}
+
+	private static String keyOf(String url) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	private FileTime lastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private long sizeOf(Path path) {
+		try {
+			return Files.size(path);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private void deleteQuietly(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			log.debug("Failed to delete cache file {}", path, e);
+		}
+	}
+}
@@ -1,21 +1,155 @@
 package com.janne.coveredv2.service;
 
+import com.janne.coveredv2.dtos.ProfileValidityResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Request metrics of the controllers.
+ * - every meter is registered up front, so recording is a lookup in a pre-filled array or map and an increment,
+ *   without building tags or querying the registry
+ * - sizes (games per request, library sizes) are recorded as DistributionSummaries and as a small fixed set of
+ *   size_bucket tag values, never as raw values in tags
+ * - {@link com.janne.coveredv2.config.CardinalityGuardMeterFilter} rejects meters that would still add unbounded tag values
+ */
 @Service
-@RequiredArgsConstructor
 public class MetricService {
-	private final MeterRegistry meterRegistry;
 
-	public void incrementCounter(String metricName, List<String> tags) {
-		meterRegistry.counter(metricName, tags.toArray(String[]::new)).increment();
+	private static final long[] SIZE_BUCKET_UPPER_BOUNDS = {0, 10, 100, 1_000, 10_000};
+	private static final String[] SIZE_BUCKETS = {"0", "1-10", "11-100", "101-1000", "1001-10000", "10001+"};
+	private static final double[] SIZE_SLOS = {1, 10, 100, 1_000, 10_000};
+
+	public enum RequestMetric {
+		ALL_COVERS("app_all_covers_requests"),
+		SCROLL_COVERS("app_scroll_covers_requests"),
+		COVER_FROM_GAME("app_cover_from_game_request"),
+		COVER_STREAM("app_cover_stream_request"),
+		ALL_GAMES("app_all_games_requests"),
+		SCROLL_GAMES("app_scroll_games_requests"),
+		RESOLVE_VANITY_URL("app_resolve_vanity_url"),
+		USERNAME("app_username_requests");
+
+		private final String metricName;
+
+		RequestMetric(String metricName) {
+			this.metricName = metricName;
+		}
+	}
+
+	public enum SizedRequestMetric {
+		COVERS_FROM_GAMES("app_cover_from_games_request"),
+		EXPORT_COVERS("app_export_covers_request");
+
+		private final String metricName;
+
+		SizedRequestMetric(String metricName) {
+			this.metricName = metricName;
+		}
+	}
+
+	public enum LibrarySource {
+		PLAYER("app_get_games_from_player"),
+		FAMILY("app_get_games_from_player_family");
+
+		private final String metricName;
+
+		LibrarySource(String metricName) {
+			this.metricName = metricName;
+		}
+	}
+
+	private final Map<RequestMetric, Counter> requestCounters = new EnumMap<>(RequestMetric.class);
+	private final Map<SizedRequestMetric, Counter[]> sizedRequestCounters = new EnumMap<>(SizedRequestMetric.class);
+	private final Map<SizedRequestMetric, DistributionSummary> requestSizes = new EnumMap<>(SizedRequestMetric.class);
+	private final Map<LibrarySource, Counter[]> libraryRequestCounters = new EnumMap<>(LibrarySource.class);
+	private final Map<LibrarySource, DistributionSummary> libraryGames = new EnumMap<>(LibrarySource.class);
+	private final Map<LibrarySource, DistributionSummary> libraryUnresolvedGames = new EnumMap<>(LibrarySource.class);
+	private final Map<LibrarySource, Timer> libraryDurations = new EnumMap<>(LibrarySource.class);
+	private final Counter validProfileRequests;
+	private final Map<ProfileValidityResponse.InvalidityReason, Counter> invalidProfileRequests =
+			new EnumMap<>(ProfileValidityResponse.InvalidityReason.class);
+	private final Counter invalidProfileRequestsWithoutReason;
+
+	public MetricService(MeterRegistry meterRegistry) {
+		for (RequestMetric metric : RequestMetric.values()) {
+			requestCounters.put(metric, meterRegistry.counter(metric.metricName));
+		}
+		for (SizedRequestMetric metric : SizedRequestMetric.values()) {
+			sizedRequestCounters.put(metric, sizeBucketCounters(meterRegistry, metric.metricName));
+			requestSizes.put(metric, sizeSummary(meterRegistry, metric.metricName + "_size"));
+		}
+		for (LibrarySource source : LibrarySource.values()) {
+			String tag = source.name().toLowerCase();
+			libraryRequestCounters.put(source, sizeBucketCounters(meterRegistry, source.metricName));
+			libraryGames.put(source, sizeSummary(meterRegistry, "app_library_games", "source", tag));
+			libraryUnresolvedGames.put(source, sizeSummary(meterRegistry, "app_library_unresolved_games", "source", tag));
+			libraryDurations.put(source, Timer.builder("app_library_request_duration")
+					.tag("source", tag)
+					.publishPercentileHistogram()
+					.register(meterRegistry));
+		}
+		validProfileRequests = meterRegistry.counter("app_profile_validity_requests", "valid", "true", "reason", "null");
+		for (ProfileValidityResponse.InvalidityReason reason : ProfileValidityResponse.InvalidityReason.values()) {
+			invalidProfileRequests.put(reason,
+					meterRegistry.counter("app_profile_validity_requests", "valid", "false", "reason", reason.name()));
+		}
+		invalidProfileRequestsWithoutReason = meterRegistry.counter("app_profile_validity_requests", "valid", "false", "reason", "null");
+	}
+
+	public void increment(RequestMetric metric) {
+		requestCounters.get(metric).increment();
+	}
+
+	public void increment(SizedRequestMetric metric, int size) {
+		sizedRequestCounters.get(metric)[sizeBucket(size)].increment();
+		requestSizes.get(metric).record(size);
+	}
+
+	public void recordLibraryRequest(LibrarySource source, int games, int unresolvedGames, long durationNanos) {
+		libraryRequestCounters.get(source)[sizeBucket(games)].increment();
+		libraryGames.get(source).record(games);
+		libraryUnresolvedGames.get(source).record(unresolvedGames);
+		libraryDurations.get(source).record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordProfileValidity(ProfileValidityResponse response) {
+		if (response.isValid()) {
+			validProfileRequests.increment();
+		} else if (response.getReason() == null) {
+			invalidProfileRequestsWithoutReason.increment();
+		} else {
+			invalidProfileRequests.get(response.getReason()).increment();
+		}
+	}
+
+	private static int sizeBucket(long size) {
+		for (int i = 0; i < SIZE_BUCKET_UPPER_BOUNDS.length; i++) {
+			if (size <= SIZE_BUCKET_UPPER_BOUNDS[i]) {
+				return i;
+			}
+		}
+		return SIZE_BUCKETS.length - 1;
+	}
+
+	private static Counter[] sizeBucketCounters(MeterRegistry meterRegistry, String name) {
+		Counter[] counters = new Counter[SIZE_BUCKETS.length];
+		for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+			counters[i] = meterRegistry.counter(name, "size_bucket", SIZE_BUCKETS[i]);
+		}
+		return counters;
 	}
 
-	public void incrementCounter(String metricName) {
-		meterRegistry.counter(metricName).increment();
+	private static DistributionSummary sizeSummary(MeterRegistry meterRegistry, String name, String... tags) {
+		return DistributionSummary.builder(name)
+				.tags(tags)
+				.serviceLevelObjectives(SIZE_SLOS)
+				.register(meterRegistry);
 	}
 }
@@ -1,12 +1,15 @@
 package com.janne.coveredv2.service.apis;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.janne.coveredv2.dtos.ProfileValidityResponse;
 import com.janne.coveredv2.dtos.steamapi.SharedLibraryAppsDto;
 import com.janne.coveredv2.dtos.steamapi.UserGameLibraryDto;
 import com.janne.coveredv2.dtos.steamapi.VanityUrlLookupResponseDto;
 import com.janne.coveredv2.entities.Game;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
@@ -15,6 +18,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -22,14 +26,36 @@ import java.util.stream.Collectors;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class SteamApiService {
 
     private final WebClient webClient;
+    private final AsyncCache<Long, UserGameLibraryDto> userGameLibraryCache;
     @Value("${app.steam.api-key}")
     private String API_KEY;
 
+    public SteamApiService(WebClient webClient,
+                           @Value("${app.steam.library-cache.ttl:60s}") Duration libraryCacheTtl,
+                           @Value("${app.steam.library-cache.max-size:10000}") long libraryCacheMaxSize,
+                           MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        this.userGameLibraryCache = Caffeine.newBuilder()
+            .expireAfterWrite(libraryCacheTtl)
+            .maximumSize(libraryCacheMaxSize)
+            .recordStats()
+            .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, userGameLibraryCache, "steam_user_game_library");
+    }
+
+    /**
+     * Returns the owned games of a user, cached per steamId for a short TTL.
+     * Concurrent calls for the same user share a single in-flight request; failed requests are not cached.
+     */
     public Mono<UserGameLibraryDto> getUserGameLibrary(Long steamUserId) {
+        return Mono.fromFuture(() -> userGameLibraryCache.get(steamUserId,
+            (id, executor) -> fetchUserGameLibrary(id).toFuture()), true);
+    }
+
+    private Mono<UserGameLibraryDto> fetchUserGameLibrary(Long steamUserId) {
         return webClient.get()
             .uri("https://api.steampowered.com/IPlayerService/GetOwnedGames/v0001?key=" + API_KEY + "&steamid=" + steamUserId
                 + "&format=json&include_appinfo=true&include_played_free_games=true&include_free_sub=true&include_extended_appinfo=true")
@@ -3,14 +3,17 @@ package com.janne.coveredv2.service.apis;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.janne.coveredv2.dtos.steamgriddbapi.GameDetailDto;
 import com.janne.coveredv2.dtos.steamgriddbapi.GridDto;
+import com.janne.coveredv2.dtos.steamgriddbapi.GridListing;
 import com.janne.coveredv2.dtos.steamgriddbapi.GridsDetailDto;
 import com.janne.coveredv2.entities.Cover;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -20,8 +23,8 @@ import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Service
@@ -30,11 +33,16 @@ public class SteamGridDBApiService {
 
 	private final WebClient webClient;
 	private final ObjectMapper objectMapper;
+	private final SteamGridDBRateLimiter rateLimiter;
 	@Value("${app.steamgriddb.api-key}")
 	private String API_KEY;
+	@Value("${app.steamgriddb.page-concurrency:4}")
+	private int pageConcurrency;
+	@Value("${app.steamgriddb.partial-pages:true}")
+	private boolean partialPages;
 
 	public Mono<Long> getSteamGridDbIdFromSteamAppId(long steamAppId) {
-		return Objects.requireNonNull(webClient.get()
+		return rateLimiter.limit(Objects.requireNonNull(webClient.get()
 				.uri("https://www.steamgriddb.com/api/v2/games/steam/" + steamAppId)
 				.header("Authorization", "Bearer " + API_KEY)
 				.retrieve()
@@ -47,11 +55,11 @@ public class SteamGridDBApiService {
 				.bodyToMono(GameDetailDto.class)
 				.map(GameDetailDto::getData)
 				.map(GameDetailDto.GameDetailObjectData::getId)
-		);
+		));
 	}
 
 	public Mono<GridsDetailDto> getGridsPage(long gridDbId, int page) {
-		return Objects.requireNonNull(webClient.get()
+		return rateLimiter.limit(Objects.requireNonNull(webClient.get()
 				.uri("https://www.steamgriddb.com/api/v2/grids/game/" + gridDbId +
 						"?page=" + page + "&types=static,animated")
 				.header("Authorization", "Bearer " + API_KEY)
@@ -63,7 +71,7 @@ public class SteamGridDBApiService {
 				.onStatus(status -> !status.is2xxSuccessful(),
 						clientResponse -> clientResponse.createException().flatMap(Mono::error))
 				.bodyToMono(GridsDetailDto.class)
-		);
+		));
 	}
 
 	public Mono<GridDto[]> getGridsFromGridDbId(long gridDbId) {
@@ -71,23 +79,74 @@ public class SteamGridDBApiService {
 				.map(GridsDetailDto::getData);
 	}
 
-	public Mono<List<GridDto>> getAllGridsFromGridDbId(long gridDbId) {
-		return getGridsPage(gridDbId, 0).flatMap(firstPage -> {
+	/**
+	 * Fetches all grid pages of a game.
+	 * - page 0 is requested conditionally (If-None-Match / If-Modified-Since) with the validators of the previous
+	 *   listing, if there are any; a 304 answers the whole listing as not modified
+	 * - page 0 determines the page count; remaining pages are fetched with up to
+	 *   app.steamgriddb.page-concurrency requests in parallel, each going through the rate limiter
+	 * - grids are returned in page order
+	 * - in partial mode a failing page (other than page 0) is logged and skipped instead of failing the whole game,
+	 *   and the listing is marked incomplete
+	 */
+	public Mono<GridListing> getAllGridsFromGridDbId(long gridDbId, String etag, String lastModified) {
+		return getFirstGridsPage(gridDbId, etag, lastModified).flatMap(response -> {
+			if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+				return Mono.just(GridListing.notModifiedListing());
+			}
+			GridsDetailDto firstPage = Objects.requireNonNull(response.getBody(), "Empty grids page");
+			String responseEtag = response.getHeaders().getETag();
+			String responseLastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
 			int total = firstPage.getTotal();
 			int limit = firstPage.getLimit();
-			if (limit <= 0) {
-				return Mono.just(Arrays.asList(firstPage.getData()));
-			}
-			int pages = (int) Math.ceil((double) total / (double) limit); // total number of pages (0..pages-1)
+			int pages = limit <= 0 ? 1 : (int) Math.ceil((double) total / (double) limit); // total number of pages (0..pages-1)
 			if (pages <= 1) {
-				return Mono.just(Arrays.asList(firstPage.getData()));
+				return Mono.just(new GridListing(Arrays.asList(firstPage.getData()), true, false, responseEtag, responseLastModified));
 			}
+			AtomicBoolean complete = new AtomicBoolean(true);
 			Flux<GridsDetailDto> remaining = Flux.range(1, pages - 1)
-					.concatMap(p -> getGridsPage(gridDbId, p));
+					.flatMapSequential(p -> getRemainingGridsPage(gridDbId, p, complete), pageConcurrency);
 			return Flux.concat(Flux.just(firstPage), remaining)
 					.map(GridsDetailDto::getData)
 					.flatMapIterable(Arrays::asList)
-					.collectList();
+					.collectList()
+					.map(grids -> new GridListing(grids, complete.get(), false, responseEtag, responseLastModified));
+		});
+	}
+
+	private Mono<ResponseEntity<GridsDetailDto>> getFirstGridsPage(long gridDbId, String etag, String lastModified) {
+		return rateLimiter.limit(Objects.requireNonNull(webClient.get()
+				.uri("https://www.steamgriddb.com/api/v2/grids/game/" + gridDbId +
+						"?page=0&types=static,animated")
+				.header("Authorization", "Bearer " + API_KEY)
+				.headers(headers -> {
+					if (etag != null) {
+						headers.setIfNoneMatch(etag);
+					}
+					if (lastModified != null) {
+						headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+					}
+				})
+				.retrieve()
+				.onStatus(status -> status.isSameCodeAs(HttpStatus.NOT_FOUND),
+						clientResponse -> clientResponse.createException()
+								.flatMap(e -> Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND,
+										"No grids found for game with id " + gridDbId))))
+				.onStatus(HttpStatusCode::isError,
+						clientResponse -> clientResponse.createException().flatMap(Mono::error))
+				.toEntity(GridsDetailDto.class)
+		));
+	}
+
+	private Mono<GridsDetailDto> getRemainingGridsPage(long gridDbId, int page, AtomicBoolean complete) {
+		Mono<GridsDetailDto> request = getGridsPage(gridDbId, page);
+		if (!partialPages) {
+			return request;
+		}
+		return request.onErrorResume(ex -> {
+			log.warn("Failed to fetch grids page {} for SteamGridDB game {}, continuing without it: {}", page, gridDbId, ex.toString());
+			complete.set(false);
+			return Mono.empty();
 		});
 	}
 
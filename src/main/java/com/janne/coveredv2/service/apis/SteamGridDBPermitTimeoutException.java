@@ -0,0 +1,15 @@
+package com.janne.coveredv2.service.apis;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Thrown when a SteamGridDB call waited longer than max-wait for a permit of the local rate limiter.
+ * The call was never sent, so this is local back pressure and not a failure of SteamGridDB.
+ */
+public class SteamGridDBPermitTimeoutException extends ResponseStatusException {
+
+	public SteamGridDBPermitTimeoutException() {
+		super(HttpStatus.SERVICE_UNAVAILABLE, "Timed out waiting for a SteamGridDB request permit");
+	}
+}
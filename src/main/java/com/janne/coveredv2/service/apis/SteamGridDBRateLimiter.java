@@ -0,0 +1,259 @@
+package com.janne.coveredv2.service.apis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Guards every SteamGridDB API call with a token bucket and an adaptive concurrency limit.
+ * - the token bucket caps the request rate ({@code requests-per-second}, {@code burst})
+ * - the concurrency limit follows AIMD: it grows by one per limit-worth of healthy responses and is
+ * multiplied by {@code backoff-ratio} on 429/5xx, timeouts or when latency rises above
+ * {@code latency-tolerance} times the long-term baseline
+ * - callers wait for a permit in a FIFO queue without blocking a thread; waiters are granted when a call
+ * completes or, if tokens ran out, at the time the next token is due
+ * - waiting longer than {@code max-wait} fails the call with a {@link SteamGridDBPermitTimeoutException}
+ */
+@Slf4j
+@Component
+public class SteamGridDBRateLimiter {
+
+	private static final double FAST_LATENCY_WEIGHT = 0.2;
+	private static final double BASELINE_LATENCY_WEIGHT = 0.01;
+
+	private final double tokensPerSecond;
+	private final double burst;
+	private final int minConcurrency;
+	@Getter
+	private final int maxConcurrency;
+	private final double backoffRatio;
+	private final double latencyTolerance;
+	private final Duration maxWait;
+	private final Duration decreaseCooldown;
+
+	private double tokens;
+	private long lastRefillNanos = System.nanoTime();
+	private double limit;
+	private int inFlight;
+	private double latencyEwmaNanos;
+	private double latencyBaselineNanos;
+	private long lastDecreaseNanos;
+	private final Deque<Waiter> waiters = new ArrayDeque<>();
+	private boolean refillScheduled;
+
+	private final Counter rejections;
+	private final Counter decreases;
+	private final Counter overloadResponses;
+	private final Timer latency;
+
+	public SteamGridDBRateLimiter(@Value("${app.steamgriddb.concurrency_count:50}") int initialConcurrency,
+	                              @Value("${app.steamgriddb.rate-limit.requests-per-second:20}") double tokensPerSecond,
+	                              @Value("${app.steamgriddb.rate-limit.burst:40}") double burst,
+	                              @Value("${app.steamgriddb.rate-limit.min-concurrency:1}") int minConcurrency,
+	                              @Value("${app.steamgriddb.rate-limit.max-concurrency:64}") int maxConcurrency,
+	                              @Value("${app.steamgriddb.rate-limit.backoff-ratio:0.5}") double backoffRatio,
+	                              @Value("${app.steamgriddb.rate-limit.latency-tolerance:2.0}") double latencyTolerance,
+	                              @Value("${app.steamgriddb.rate-limit.max-wait:30s}") Duration maxWait,
+	                              @Value("${app.steamgriddb.rate-limit.decrease-cooldown:1s}") Duration decreaseCooldown,
+	                              MeterRegistry meterRegistry) {
+		this.tokensPerSecond = tokensPerSecond;
+		this.burst = Math.max(1, burst);
+		this.minConcurrency = Math.max(1, minConcurrency);
+		this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+		this.backoffRatio = backoffRatio;
+		this.latencyTolerance = latencyTolerance;
+		this.maxWait = maxWait;
+		this.decreaseCooldown = decreaseCooldown;
+		this.tokens = this.burst;
+		this.limit = Math.clamp(initialConcurrency, this.minConcurrency, this.maxConcurrency);
+
+		this.rejections = meterRegistry.counter("app_steamgriddb_rejections");
+		this.decreases = meterRegistry.counter("app_steamgriddb_limit_decreases");
+		this.overloadResponses = meterRegistry.counter("app_steamgriddb_overload_responses");
+		this.latency = Timer.builder("app_steamgriddb_request_latency").register(meterRegistry);
+		Gauge.builder("app_steamgriddb_concurrency_limit", this, SteamGridDBRateLimiter::getLimit).register(meterRegistry);
+		Gauge.builder("app_steamgriddb_in_flight", this, SteamGridDBRateLimiter::getInFlight).register(meterRegistry);
+	}
+
+	/**
+	 * Subscribes to the call once a token and a concurrency slot are available.
+	 */
+	public <T> Mono<T> limit(Mono<T> call) {
+		return Mono.<Boolean>create(sink -> {
+					Waiter waiter = new Waiter(sink);
+					Disposable timeout = Schedulers.parallel().schedule(() -> reject(waiter), maxWait.toNanos(), TimeUnit.NANOSECONDS);
+					sink.onDispose(timeout);
+					sink.onCancel(() -> abandon(waiter));
+					enqueue(waiter);
+				})
+				.flatMap(permit -> {
+					long start = System.nanoTime();
+					Throwable[] failure = new Throwable[1];
+					return call
+							.doOnError(e -> failure[0] = e)
+							.doFinally(signal -> release(System.nanoTime() - start, signal, failure[0]));
+				});
+	}
+
+	public synchronized double getLimit() {
+		return limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	private void enqueue(Waiter waiter) {
+		synchronized (this) {
+			waiters.addLast(waiter);
+		}
+		grantWaiters();
+	}
+
+	/**
+	 * Fails a waiter that is still queued after max-wait. Decided under the monitor, so a waiter is either
+	 * granted or rejected, never both.
+	 */
+	private void reject(Waiter waiter) {
+		synchronized (this) {
+			if (!waiters.remove(waiter)) {
+				return;
+			}
+		}
+		rejections.increment();
+		waiter.sink.error(new SteamGridDBPermitTimeoutException());
+	}
+
+	/**
+	 * Drops a cancelled waiter. A waiter that was granted a permit before it was cancelled gives it back.
+	 */
+	private void abandon(Waiter waiter) {
+		synchronized (this) {
+			if (waiters.remove(waiter) || !waiter.granted) {
+				return;
+			}
+			inFlight--;
+		}
+		grantWaiters();
+	}
+
+	/**
+	 * Hands out permits to waiters in arrival order. Sinks are completed outside the monitor, because completing
+	 * one subscribes to its call.
+	 */
+	private void grantWaiters() {
+		List<Waiter> granted = new ArrayList<>();
+		synchronized (this) {
+			long now = System.nanoTime();
+			tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerSecond / TimeUnit.SECONDS.toNanos(1));
+			lastRefillNanos = now;
+			while (!waiters.isEmpty() && inFlight < (int) limit && tokens >= 1) {
+				tokens -= 1;
+				inFlight++;
+				Waiter waiter = waiters.removeFirst();
+				waiter.granted = true;
+				granted.add(waiter);
+			}
+			// Blocked on tokens: nothing else wakes the queue, so wake it when the next token is due
+			if (!waiters.isEmpty() && inFlight < (int) limit && !refillScheduled) {
+				refillScheduled = true;
+				long delayNanos = (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / tokensPerSecond);
+				Schedulers.parallel().schedule(() -> {
+					synchronized (this) {
+						refillScheduled = false;
+					}
+					grantWaiters();
+				}, Math.max(1, delayNanos), TimeUnit.NANOSECONDS);
+			}
+		}
+		granted.forEach(waiter -> waiter.sink.success(Boolean.TRUE));
+	}
+
+	private void release(long latencyNanos, SignalType signal, Throwable failure) {
+		synchronized (this) {
+			inFlight--;
+			if (signal != SignalType.CANCEL) {
+				adjustLimit(latencyNanos, failure);
+			}
+		}
+		grantWaiters();
+	}
+
+	private void adjustLimit(long latencyNanos, Throwable failure) {
+		if (isOverload(failure)) {
+			overloadResponses.increment();
+			decrease();
+			return;
+		}
+
+		latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+		if (latencyBaselineNanos == 0) {
+			latencyEwmaNanos = latencyNanos;
+			latencyBaselineNanos = latencyNanos;
+		} else {
+			latencyEwmaNanos += FAST_LATENCY_WEIGHT * (latencyNanos - latencyEwmaNanos);
+			latencyBaselineNanos += BASELINE_LATENCY_WEIGHT * (latencyNanos - latencyBaselineNanos);
+		}
+
+		if (latencyEwmaNanos > latencyBaselineNanos * latencyTolerance) {
+			decrease();
+		} else if (inFlight + 1 >= (int) limit) {
+			// Only grow while the current limit is actually being used
+			limit = Math.min(maxConcurrency, limit + 1 / limit);
+		}
+	}
+
+	private void decrease() {
+		long now = System.nanoTime();
+		if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < decreaseCooldown.toNanos()) {
+			return;
+		}
+		lastDecreaseNanos = now;
+		double previous = limit;
+		limit = Math.max(minConcurrency, limit * backoffRatio);
+		decreases.increment();
+		log.info("SteamGridDB concurrency limit decreased from {} to {}", (int) previous, (int) limit);
+	}
+
+	private static boolean isOverload(Throwable failure) {
+		if (failure == null) {
+			return false;
+		}
+		if (failure instanceof WebClientResponseException responseException) {
+			return responseException.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)
+					|| responseException.getStatusCode().is5xxServerError();
+		}
+		return failure instanceof TimeoutException || failure instanceof WebClientRequestException;
+	}
+
+
+	private static final class Waiter {
+		private final MonoSink<Boolean> sink;
+		private boolean granted;
+
+		private Waiter(MonoSink<Boolean> sink) {
+			this.sink = sink;
+		}
+	}
+}
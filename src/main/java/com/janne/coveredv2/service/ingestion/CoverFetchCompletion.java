@@ -0,0 +1,41 @@
+package com.janne.coveredv2.service.ingestion;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.janne.coveredv2.entities.Cover;
+
+import java.util.List;
+
+/**
+ * Final outcome of the cover ingestion of one game, as seen by clients waiting for it.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record CoverFetchCompletion(String gameUuid, Status status, List<Cover> covers) {
+
+	public enum Status {
+		/**
+		 * Covers were fetched and stored; the list may be empty if SteamGridDB has none.
+		 */
+		FETCHED,
+		/**
+		 * Fetching failed too often; the game will not be retried automatically.
+		 */
+		DEAD_LETTERED,
+		/**
+		 * No game with this uuid exists.
+		 */
+		UNKNOWN
+	}
+
+	public static CoverFetchCompletion fetched(String gameUuid, List<Cover> covers) {
+		return new CoverFetchCompletion(gameUuid, Status.FETCHED, covers);
+	}
+
+	public static CoverFetchCompletion deadLettered(String gameUuid) {
+		return new CoverFetchCompletion(gameUuid, Status.DEAD_LETTERED, List.of());
+	}
+
+	public static CoverFetchCompletion unknown(String gameUuid) {
+		return new CoverFetchCompletion(gameUuid, Status.UNKNOWN, List.of());
+	}
+}
@@ -0,0 +1,37 @@
+package com.janne.coveredv2.service.ingestion;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+
+/**
+ * In-process bus for cover ingestion completions.
+ * - completions are published after the transaction that stored them committed
+ * - subscribers only see completions published while they are subscribed; there is no replay
+ * - slow subscribers do not hold back ingestion: every subscriber gets its own bounded buffer and fails
+ *   once it overflows
+ */
+@Slf4j
+@Service
+public class CoverFetchEventBus {
+
+	private static final int SUBSCRIBER_BUFFER_SIZE = 10_000;
+
+	private final Sinks.Many<CoverFetchCompletion> sink = Sinks.many().multicast().directBestEffort();
+
+	public synchronized void publish(List<CoverFetchCompletion> completions) {
+		for (CoverFetchCompletion completion : completions) {
+			Sinks.EmitResult result = sink.tryEmitNext(completion);
+			if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+				log.debug("Dropped cover fetch completion for game {}: {}", completion.gameUuid(), result);
+			}
+		}
+	}
+
+	public Flux<CoverFetchCompletion> completions() {
+		return sink.asFlux().onBackpressureBuffer(SUBSCRIBER_BUFFER_SIZE);
+	}
+}
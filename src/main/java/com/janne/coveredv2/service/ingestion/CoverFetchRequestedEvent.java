@@ -0,0 +1,7 @@
+package com.janne.coveredv2.service.ingestion;
+
+/**
+ * Published after games without covers were moved into the interactive lane.
+ */
+public record CoverFetchRequestedEvent(int gameCount) {
+}
@@ -0,0 +1,42 @@
+package com.janne.coveredv2.service.ingestion;
+
+import com.janne.coveredv2.entities.Cover;
+import com.janne.coveredv2.entities.Game;
+
+import java.util.List;
+
+/**
+ * Outcome of fetching the covers of a claimed game, not yet persisted.
+ * Either covers (possibly empty), a not-modified answer to a conditional refresh, or the failure that prevented
+ * fetching them.
+ * - complete is false if grid pages were skipped, so covers may lack grids that are still listed
+ * - a game missing on SteamGridDB yields no covers and is never complete, so a refresh keeps its stored covers
+ * - gridsEtag and gridsLastModified are the validators to send with the next refresh
+ */
+public record CoverFetchResult(Game game, List<Cover> covers, boolean complete, boolean notModified,
+                               String gridsEtag, String gridsLastModified, Throwable failure) {
+
+	public static CoverFetchResult success(Game game, List<Cover> covers) {
+		return success(game, covers, true, null, null);
+	}
+
+	public static CoverFetchResult success(Game game, List<Cover> covers, boolean complete, String gridsEtag, String gridsLastModified) {
+		return new CoverFetchResult(game, covers, complete, false, gridsEtag, gridsLastModified, null);
+	}
+
+	public static CoverFetchResult missing(Game game) {
+		return new CoverFetchResult(game, List.of(), false, false, null, null, null);
+	}
+
+	public static CoverFetchResult notModified(Game game) {
+		return new CoverFetchResult(game, List.of(), true, true, game.getGridsEtag(), game.getGridsLastModified(), null);
+	}
+
+	public static CoverFetchResult failure(Game game, Throwable failure) {
+		return new CoverFetchResult(game, List.of(), false, false, null, null, failure);
+	}
+
+	public boolean isSuccess() {
+		return failure == null;
+	}
+}
@@ -0,0 +1,405 @@
+package com.janne.coveredv2.service.ingestion;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.janne.coveredv2.entities.Cover;
+import com.janne.coveredv2.entities.Game;
+import com.janne.coveredv2.repositories.GameRepository;
+import com.janne.coveredv2.service.CoverService;
+import com.janne.coveredv2.service.apis.SteamGridDBPermitTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Database backed work queue of games whose covers still have to be fetched or are due for a refresh.
+ * - workers claim games with SELECT ... FOR UPDATE SKIP LOCKED, so concurrent replicas never claim the same game
+ * - a claim is a lease: owner and expiry are stored on the game row
+ * - games are claimed from {@link IngestionLane}s; each lane gets a weighted share of every claim and
+ *   shares a lane cannot use go to the other lanes in priority order
+ * - a library request adds one to the popularity of its games, at most once per user per requester-window and
+ *   instance; popularity halves every popularity-half-life, so games nobody loads any more stop counting as popular
+ * - games fetched longer than refresh-after ago (popular-refresh-after for popular games) are refreshed in the
+ *   {@link IngestionLane#REFRESH} lane, which only gets capacity the first fetch lanes leave unused and at most
+ *   budget-per-hour games per instance; games found missing on SteamGridDB re-enter that lane once their
+ *   negative entry is older than app.steamgriddb.missing-recheck-after
+ * - games whose lease expires without completion (e.g. crashed pod) are delivered again
+ * - failed fetches are retried with exponential backoff and jitter; after too many attempts a game without covers
+ *   is dead-lettered, while a failed refresh keeps retrying at the maximum backoff
+ * - fetches that timed out waiting for a local rate limiter permit are retried after initial-backoff without
+ *   counting as an attempt
+ * - completing a game only writes if the lease is still held by this instance
+ * - stored and dead-lettered games are announced on the {@link CoverFetchEventBus} after commit
+ */
+@Slf4j
+@Service
+public class CoverIngestionQueue {
+
+	private static final int MAX_ERROR_LENGTH = 255;
+	private static final int REQUEST_CHUNK_SIZE = 1000;
+	private static final List<IngestionLane> FIRST_FETCH_LANES =
+			List.of(IngestionLane.INTERACTIVE, IngestionLane.POPULAR, IngestionLane.BACKGROUND);
+
+	private final GameRepository gameRepository;
+	private final CoverService coverService;
+	private final TransactionTemplate transactionTemplate;
+	private final ApplicationEventPublisher eventPublisher;
+	private final CoverFetchEventBus coverFetchEventBus;
+	private final Map<IngestionLane, Integer> laneWeights;
+	private final Map<IngestionLane, Counter> claimedCounters = new EnumMap<>(IngestionLane.class);
+	private final Map<IngestionLane, AtomicLong> queueDepths = new EnumMap<>(IngestionLane.class);
+	// Steam ids whose library request already counted towards popularity in the current requester window
+	private final Cache<Long, Boolean> countedRequesters;
+	@Getter
+	private final String instanceId;
+	private final Duration leaseDuration;
+	@Value("${app.ingestion.retry.initial-backoff:30s}")
+	private Duration initialBackoff;
+	@Value("${app.ingestion.retry.max-backoff:6h}")
+	private Duration maxBackoff;
+	@Value("${app.ingestion.retry.max-attempts:8}")
+	private int maxAttempts;
+	@Value("${app.ingestion.lanes.interactive-window:10m}")
+	private Duration interactiveWindow;
+	@Value("${app.ingestion.lanes.popular-threshold:3}")
+	private int popularThreshold;
+	@Value("${app.ingestion.lanes.popularity-half-life:7d}")
+	private Duration popularityHalfLife;
+	@Value("${app.ingestion.refresh.refresh-after:7d}")
+	private Duration refreshAfter;
+	@Value("${app.ingestion.refresh.popular-refresh-after:1d}")
+	private Duration popularRefreshAfter;
+	@Value("${app.steamgriddb.missing-recheck-after:7d}")
+	private Duration missingRecheckAfter;
+	@Value("${app.ingestion.refresh.budget-per-hour:600}")
+	private int refreshBudgetPerHour;
+
+	// Token bucket of the refresh budget, holding at most a minute worth of refreshes
+	private double refreshTokens;
+	private long lastRefreshRefill;
+
+	public CoverIngestionQueue(GameRepository gameRepository, CoverService coverService, TransactionTemplate transactionTemplate,
+	                           ApplicationEventPublisher eventPublisher, CoverFetchEventBus coverFetchEventBus, MeterRegistry meterRegistry,
+	                           @Value("${app.ingestion.instance-id:${HOSTNAME:${random.uuid}}}") String instanceId,
+	                           @Value("${app.ingestion.lease-duration:5m}") Duration leaseDuration,
+	                           @Value("${app.ingestion.lanes.interactive-weight:6}") int interactiveWeight,
+	                           @Value("${app.ingestion.lanes.popular-weight:3}") int popularWeight,
+	                           @Value("${app.ingestion.lanes.background-weight:1}") int backgroundWeight,
+	                           @Value("${app.ingestion.lanes.requester-window:1d}") Duration requesterWindow,
+	                           @Value("${app.ingestion.lanes.max-tracked-requesters:100000}") long maxTrackedRequesters) {
+		this.gameRepository = gameRepository;
+		this.coverService = coverService;
+		this.transactionTemplate = transactionTemplate;
+		this.eventPublisher = eventPublisher;
+		this.coverFetchEventBus = coverFetchEventBus;
+		this.instanceId = instanceId;
+		this.leaseDuration = leaseDuration;
+		this.laneWeights = new EnumMap<>(Map.of(
+				IngestionLane.INTERACTIVE, Math.max(0, interactiveWeight),
+				IngestionLane.POPULAR, Math.max(0, popularWeight),
+				IngestionLane.BACKGROUND, Math.max(0, backgroundWeight)));
+		this.countedRequesters = Caffeine.newBuilder()
+				.expireAfterWrite(requesterWindow)
+				.maximumSize(maxTrackedRequesters)
+				.build();
+		for (IngestionLane lane : IngestionLane.values()) {
+			String tag = lane.name().toLowerCase();
+			claimedCounters.put(lane, meterRegistry.counter("app_ingestion_claimed_games", "lane", tag));
+			queueDepths.put(lane, meterRegistry.gauge("app_ingestion_queue_depth", Tags.of("lane", tag), new AtomicLong()));
+		}
+	}
+
+	public Page<Game> getDeadLetteredGames(Pageable pageable) {
+		return gameRepository.findByCoverFetchDeadLetteredTrue(pageable);
+	}
+
+	/**
+	 * Whether a library request of this user counts towards popularity: true for the first request of the user
+	 * within the requester window, so reloading a library does not make its games popular.
+	 */
+	public boolean countsTowardsPopularity(Long requesterSteamId) {
+		return countedRequesters.asMap().putIfAbsent(requesterSteamId, Boolean.TRUE) == null;
+	}
+
+	/**
+	 * Records a library request for all given games. If it counts towards popularity, it ranks them higher in the
+	 * popular and refresh lanes. The not yet fetched games among them move into the interactive lane either way,
+	 * because a user is waiting for them.
+	 */
+	public void requestCoverFetch(Collection<Game> games, boolean countsTowardsPopularity) {
+		if (games.isEmpty()) {
+			return;
+		}
+		List<String> uuids = games.stream().map(Game::getUuid).toList();
+		long unfetched = games.stream().filter(game -> game.getTimeOfLastCoverFetch() == null).count();
+		long now = System.currentTimeMillis();
+		try {
+			for (int from = 0; from < uuids.size(); from += REQUEST_CHUNK_SIZE) {
+				gameRepository.markCoverFetchRequested(uuids.subList(from, Math.min(from + REQUEST_CHUNK_SIZE, uuids.size())), now,
+						popularityHalfLife.toMillis(), countsTowardsPopularity ? 1 : 0);
+			}
+		} catch (DataAccessException e) {
+			// Best effort: the games are still fetched, just not with interactive priority
+			log.warn("Failed to prioritize {} games for cover fetching", uuids.size(), e);
+			return;
+		}
+		if (unfetched > 0) {
+			eventPublisher.publishEvent(new CoverFetchRequestedEvent((int) unfetched));
+		}
+	}
+
+	public List<Game> claim(int limit) {
+		return transactionTemplate.execute(status -> {
+			long now = System.currentTimeMillis();
+			List<Game> claimed = new ArrayList<>(limit);
+			Map<IngestionLane, Integer> quotas = laneQuotas(limit);
+			for (IngestionLane lane : FIRST_FETCH_LANES) {
+				claimed.addAll(claimFromLane(lane, quotas.get(lane), now));
+			}
+			for (IngestionLane lane : FIRST_FETCH_LANES) {
+				if (claimed.size() >= limit) {
+					break;
+				}
+				claimed.addAll(claimFromLane(lane, limit - claimed.size(), now));
+			}
+			int refreshBudget = reserveRefreshBudget(limit - claimed.size());
+			List<Game> refreshes = claimFromLane(IngestionLane.REFRESH, refreshBudget, now);
+			releaseRefreshBudget(refreshBudget - refreshes.size());
+			claimed.addAll(refreshes);
+			return claimed;
+		});
+	}
+
+	/**
+	 * Recounts the claimable games per lane for the queue depth gauges. Runs on a schedule instead of on
+	 * every scrape, because the counts scan the game table.
+	 */
+	@Scheduled(fixedDelayString = "${app.ingestion.queue-depth-refresh-interval:10s}")
+	public void refreshQueueDepths() {
+		try {
+			for (IngestionLane lane : IngestionLane.values()) {
+				queueDepths.get(lane).set(countClaimable(lane));
+			}
+		} catch (DataAccessException e) {
+			log.debug("Failed to refresh ingestion queue depths", e);
+		}
+	}
+
+	public long countClaimable(IngestionLane lane) {
+		long now = System.currentTimeMillis();
+		long interactiveSince = now - interactiveWindow.toMillis();
+		return switch (lane) {
+			case INTERACTIVE -> gameRepository.countInteractiveLane(now, interactiveSince);
+			case POPULAR -> gameRepository.countPopularLane(now, interactiveSince, popularThreshold, popularityHalfLife.toMillis());
+			case BACKGROUND -> gameRepository.countBackgroundLane(now, interactiveSince, popularThreshold, popularityHalfLife.toMillis());
+			case REFRESH -> gameRepository.countRefreshLane(now, now - refreshAfter.toMillis(), now - popularRefreshAfter.toMillis(),
+					popularThreshold, popularityHalfLife.toMillis(), now - missingRecheckAfter.toMillis());
+		};
+	}
+
+	private List<Game> claimFromLane(IngestionLane lane, int limit, long now) {
+		if (limit <= 0) {
+			return List.of();
+		}
+		long interactiveSince = now - interactiveWindow.toMillis();
+		List<Game> games = switch (lane) {
+			case INTERACTIVE -> gameRepository.lockInteractiveLane(now, interactiveSince, limit);
+			case POPULAR -> gameRepository.lockPopularLane(now, interactiveSince, popularThreshold, popularityHalfLife.toMillis(), limit);
+			case BACKGROUND -> gameRepository.lockBackgroundLane(now, interactiveSince, popularThreshold, popularityHalfLife.toMillis(), limit);
+			case REFRESH -> gameRepository.lockRefreshLane(now, now - refreshAfter.toMillis(), now - popularRefreshAfter.toMillis(),
+					popularThreshold, popularityHalfLife.toMillis(), now - missingRecheckAfter.toMillis(), limit);
+		};
+		if (games.isEmpty()) {
+			return games;
+		}
+		games.forEach(game -> {
+			game.setCoverFetchLeaseOwner(instanceId);
+			game.setCoverFetchLeaseUntil(now + leaseDuration.toMillis());
+		});
+		// Flush so the next lane query in this transaction already sees these games as leased
+		List<Game> leased = gameRepository.saveAllAndFlush(games);
+		claimedCounters.get(lane).increment(leased.size());
+		return leased;
+	}
+
+	private synchronized int reserveRefreshBudget(int wanted) {
+		if (refreshBudgetPerHour <= 0 || wanted <= 0) {
+			return 0;
+		}
+		double capacity = Math.max(1, refreshBudgetPerHour / 60.0);
+		long now = System.currentTimeMillis();
+		refreshTokens = lastRefreshRefill == 0
+				? capacity
+				: Math.min(capacity, refreshTokens + (now - lastRefreshRefill) * refreshBudgetPerHour / (double) Duration.ofHours(1).toMillis());
+		lastRefreshRefill = now;
+		int granted = (int) Math.min(wanted, Math.floor(refreshTokens));
+		refreshTokens -= granted;
+		return granted;
+	}
+
+	private synchronized void releaseRefreshBudget(int unused) {
+		refreshTokens += unused;
+	}
+
+	/**
+	 * Splits a claim of limit games between the first fetch lanes by weight. Every lane gets the floor of its
+	 * share and the remainder goes to the lanes one by one in order of weight, so the quotas add up to limit.
+	 */
+	Map<IngestionLane, Integer> laneQuotas(int limit) {
+		Map<IngestionLane, Integer> quotas = new EnumMap<>(IngestionLane.class);
+		FIRST_FETCH_LANES.forEach(lane -> quotas.put(lane, 0));
+		int totalWeight = laneWeights.values().stream().mapToInt(Integer::intValue).sum();
+		if (totalWeight <= 0 || limit <= 0) {
+			return quotas;
+		}
+		int remainder = limit;
+		for (IngestionLane lane : FIRST_FETCH_LANES) {
+			int quota = (int) ((long) limit * laneWeights.get(lane) / totalWeight);
+			quotas.put(lane, quota);
+			remainder -= quota;
+		}
+		List<IngestionLane> byWeight = FIRST_FETCH_LANES.stream()
+				.filter(lane -> laneWeights.get(lane) > 0)
+				.sorted(Comparator.comparing(laneWeights::get).reversed())
+				.toList();
+		for (int i = 0; remainder > 0; i++, remainder--) {
+			quotas.merge(byWeight.get(i % byWeight.size()), 1, Integer::sum);
+		}
+		return quotas;
+	}
+
+	/**
+	 * Stores the results of many games in one transaction and releases their leases.
+	 * - successful games get their covers saved and are marked as fetched
+	 * - refreshed games with a complete listing lose the covers SteamGridDB no longer lists; not modified
+	 *   refreshes are only marked as fetched
+	 * - failed games are scheduled for another attempt, or dead-lettered after max-attempts
+	 * - games whose lease was lost in the meantime are skipped
+	 *
+	 * @return the results that were actually written
+	 */
+	public List<CoverFetchResult> completeAll(List<CoverFetchResult> results) {
+		return transactionTemplate.execute(status -> {
+			Map<String, Game> gamesByUuid = gameRepository.lockAllByUuidIn(results.stream().map(result -> result.game().getUuid()).toList())
+					.stream()
+					.collect(Collectors.toMap(Game::getUuid, Function.identity()));
+
+			long now = System.currentTimeMillis();
+			List<CoverFetchResult> completed = new ArrayList<>(results.size());
+			List<CoverFetchCompletion> completions = new ArrayList<>(results.size());
+			List<Cover> covers = new ArrayList<>();
+			List<String> fetchedGameUuids = new ArrayList<>();
+			Map<String, Set<Long>> listedGridIdsByRefreshedGame = new HashMap<>();
+			for (CoverFetchResult result : results) {
+				Game game = gamesByUuid.get(result.game().getUuid());
+				if (game == null || !Objects.equals(game.getCoverFetchLeaseOwner(), instanceId)) {
+					log.warn("Lease for game {} was lost before its covers were stored, discarding result", result.game().getName());
+					continue;
+				}
+				game.setCoverFetchLeaseOwner(null);
+				game.setCoverFetchLeaseUntil(null);
+				completed.add(result);
+				if (!result.isSuccess()) {
+					scheduleRetry(game, result.failure(), now);
+					if (Boolean.TRUE.equals(game.getCoverFetchDeadLettered())) {
+						completions.add(CoverFetchCompletion.deadLettered(game.getUuid()));
+					}
+					continue;
+				}
+				boolean refresh = game.getTimeOfLastCoverFetch() != null;
+				game.setTimeOfLastCoverFetch(now);
+				game.setCoverFetchAttempts(null);
+				game.setNextCoverFetchAttemptAt(null);
+				game.setLastCoverFetchError(null);
+				if (result.notModified()) {
+					continue;
+				}
+				// An incomplete listing must not be confirmed by a later 304, so its validators are not kept
+				game.setGridsEtag(result.complete() ? result.gridsEtag() : null);
+				game.setGridsLastModified(result.complete() ? result.gridsLastModified() : null);
+				if (refresh && result.complete()) {
+					listedGridIdsByRefreshedGame.put(game.getUuid(),
+							result.covers().stream().map(Cover::getSteamGridDbId).collect(Collectors.toSet()));
+				}
+				result.covers().forEach(cover -> cover.setGameUuid(game.getUuid()));
+				covers.addAll(result.covers());
+				fetchedGameUuids.add(game.getUuid());
+			}
+			if (!fetchedGameUuids.isEmpty()) {
+				// Completions carry the stored rows, which keep their uuids when a grid was already known
+				Map<String, List<Cover>> storedByGameUuid = coverService.saveCovers(covers.toArray(Cover[]::new)).stream()
+						.collect(Collectors.groupingBy(Cover::getGameUuid));
+				coverService.deleteUnlistedCovers(listedGridIdsByRefreshedGame);
+				fetchedGameUuids.forEach(gameUuid ->
+						completions.add(CoverFetchCompletion.fetched(gameUuid, storedByGameUuid.getOrDefault(gameUuid, List.of()))));
+			}
+			publishAfterCommit(completions);
+			return completed;
+		});
+	}
+
+	private void publishAfterCommit(List<CoverFetchCompletion> completions) {
+		if (completions.isEmpty()) {
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				coverFetchEventBus.publish(completions);
+			}
+		});
+	}
+
+	private void scheduleRetry(Game game, Throwable failure, long now) {
+		if (failure instanceof SteamGridDBPermitTimeoutException) {
+			// Local back pressure: SteamGridDB was never asked, so this is no attempt and never dead-letters
+			long delay = initialBackoff.toMillis() / 2 + ThreadLocalRandom.current().nextLong(initialBackoff.toMillis() / 2 + 1);
+			game.setNextCoverFetchAttemptAt(now + delay);
+			log.debug("No SteamGridDB permit for game {}, retrying in {}s", game.getName(), delay / 1000);
+			return;
+		}
+		int attempts = (game.getCoverFetchAttempts() == null ? 0 : game.getCoverFetchAttempts()) + 1;
+		game.setCoverFetchAttempts(attempts);
+		String error = String.valueOf(failure);
+		game.setLastCoverFetchError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+		// A game that already has covers keeps them, so a failing refresh is never dead-lettered
+		if (attempts >= maxAttempts && game.getTimeOfLastCoverFetch() == null) {
+			game.setCoverFetchDeadLettered(true);
+			game.setNextCoverFetchAttemptAt(null);
+			log.warn("Fetching covers for game {} failed {} times, moving it to the dead letter state", game.getName(), attempts);
+			return;
+		}
+		long backoff = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempts - 1, 30));
+		// Equal jitter: half of the backoff is fixed, the other half random
+		long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		game.setNextCoverFetchAttemptAt(now + delay);
+		log.warn("Fetching covers for game {} failed (attempt {}), retrying in {}s", game.getName(), attempts, delay / 1000);
+	}
+}
@@ -0,0 +1,120 @@
+package com.janne.coveredv2.service.ingestion;
+
+import com.janne.coveredv2.entities.Game;
+import com.janne.coveredv2.service.CoverService;
+import com.janne.coveredv2.service.apis.SteamGridDBRateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the {@link CoverIngestionQueue} on a dedicated thread.
+ * The worker sleeps until new games are created, a user requests covers, or the poll interval passes; the poll picks up
+ * games created by other replicas and leases that expired.
+ */
+@Slf4j
+@Service
+public class CoverIngestionWorker implements SmartLifecycle {
+
+	private final CoverIngestionQueue coverIngestionQueue;
+	private final CoverService coverService;
+	private final CoverPersistenceStage coverPersistenceStage;
+	private final SteamGridDBRateLimiter steamGridDBRateLimiter;
+	private final Semaphore wakeUp = new Semaphore(0);
+	@Value("${app.ingestion.batch-size:100}")
+	private int batchSize;
+	@Value("${app.ingestion.poll-interval:30s}")
+	private Duration pollInterval;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	public CoverIngestionWorker(CoverIngestionQueue coverIngestionQueue, CoverService coverService,
+	                            CoverPersistenceStage coverPersistenceStage, SteamGridDBRateLimiter steamGridDBRateLimiter) {
+		this.coverIngestionQueue = coverIngestionQueue;
+		this.coverService = coverService;
+		this.coverPersistenceStage = coverPersistenceStage;
+		this.steamGridDBRateLimiter = steamGridDBRateLimiter;
+	}
+
+	@EventListener
+	public void onGamesCreated(GamesCreatedEvent event) {
+		wakeUp.release();
+	}
+
+	@EventListener
+	public void onCoverFetchRequested(CoverFetchRequestedEvent event) {
+		wakeUp.release();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void onApplicationReady() {
+		wakeUp.release();
+	}
+
+	@Override
+	public synchronized void start() {
+		running = true;
+		thread = Thread.ofPlatform().name("cover-ingestion").daemon().start(this::run);
+	}
+
+	@Override
+	public synchronized void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void run() {
+		while (running) {
+			try {
+				wakeUp.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+				wakeUp.drainPermits();
+				List<Game> claimed;
+				do {
+					claimed = coverIngestionQueue.claim(batchSize);
+					if (!claimed.isEmpty()) {
+						log.info("Claimed {} games for cover fetching", claimed.size());
+						fetchCovers(claimed);
+					}
+				} while (running && claimed.size() >= batchSize);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				log.warn("Cover ingestion cycle failed", e);
+			}
+		}
+	}
+
+	private void fetchCovers(List<Game> games) {
+		// The adaptive limiter decides how many SteamGridDB calls actually run at once
+		int concurrency = Math.min(steamGridDBRateLimiter.getMaxConcurrency(), games.size());
+
+		Flux<CoverFetchResult> results = Flux.fromIterable(games)
+				.flatMap(game ->
+								coverService.fetchCoversForGame(game)
+										.doOnSubscribe(s -> log.info("Fetching covers for game {}", game.getName()))
+										.onErrorResume(ex -> Mono.just(CoverFetchResult.failure(game, ex))),
+						concurrency
+				);
+		coverPersistenceStage.persist(results)
+				.block(); // Block until all fetches of this batch are fetched and persisted
+	}
+}
@@ -0,0 +1,72 @@
+package com.janne.coveredv2.service.ingestion;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Writes fetch results to the database in batches, away from the HTTP client's event loop.
+ * - results are grouped with bufferTimeout, so a batch is written once it is full or the oldest result waited long enough
+ * - every batch is stored in one transaction on a dedicated scheduler
+ * - backpressure flows back to the fetch pipeline, which stops starting new fetches while the database lags behind
+ */
+@Slf4j
+@Service
+public class CoverPersistenceStage {
+
+	private final CoverIngestionQueue coverIngestionQueue;
+	private final Scheduler scheduler;
+	private final int batchSize;
+	private final Duration maxBatchDelay;
+
+	public CoverPersistenceStage(CoverIngestionQueue coverIngestionQueue,
+	                             @Value("${app.ingestion.persistence.threads:1}") int threads,
+	                             @Value("${app.ingestion.persistence.batch-size:50}") int batchSize,
+	                             @Value("${app.ingestion.persistence.max-batch-delay:500ms}") Duration maxBatchDelay) {
+		this.coverIngestionQueue = coverIngestionQueue;
+		this.scheduler = Schedulers.newBoundedElastic(Math.max(1, threads), Integer.MAX_VALUE, "cover-persistence");
+		this.batchSize = Math.max(1, batchSize);
+		this.maxBatchDelay = maxBatchDelay;
+	}
+
+	public Mono<Void> persist(Flux<CoverFetchResult> results) {
+		return results
+				.bufferTimeout(batchSize, maxBatchDelay, true)
+				.concatMap(this::persistBatch, 1)
+				.then();
+	}
+
+	private Mono<Void> persistBatch(List<CoverFetchResult> batch) {
+		return Mono.fromRunnable(() -> {
+					List<CoverFetchResult> completed = coverIngestionQueue.completeAll(batch);
+					completed.stream()
+							.filter(CoverFetchResult::isSuccess)
+							.forEach(result -> {
+								if (result.notModified()) {
+									log.debug("Covers of game {} are unchanged", result.game().getName());
+								} else {
+									log.info("Fetched {} covers for game {}", result.covers().size(), result.game().getName());
+								}
+							});
+				})
+				.subscribeOn(scheduler)
+				.onErrorResume(ex -> {
+					log.warn("Failed to persist covers for {} games, retrying after lease expiry", batch.size(), ex);
+					return Mono.empty();
+				})
+				.then();
+	}
+
+	@PreDestroy
+	void shutdown() {
+		scheduler.dispose();
+	}
+}
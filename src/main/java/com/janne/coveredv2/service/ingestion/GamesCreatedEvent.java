@@ -0,0 +1,11 @@
+package com.janne.coveredv2.service.ingestion;
+
+import com.janne.coveredv2.entities.Game;
+
+import java.util.List;
+
+/**
+ * Published after newly created games have been committed.
+ */
+public record GamesCreatedEvent(List<Game> games) {
+}
@@ -0,0 +1,17 @@
+package com.janne.coveredv2.service.ingestion;
+
+/**
+ * Priority lanes of the cover ingestion queue, highest priority first.
+ * - INTERACTIVE: games in a library a user requested within the interactive window
+ * - POPULAR: games in the libraries of at least popular-threshold distinct users, with every user's request
+ *   losing half of its weight per popularity-half-life
+ * - BACKGROUND: everything else
+ * - REFRESH: games whose covers were fetched long enough ago to look for new grids; only gets the claim capacity
+ *   the other lanes leave unused, within the refresh budget
+ */
+public enum IngestionLane {
+	INTERACTIVE,
+	POPULAR,
+	BACKGROUND,
+	REFRESH
+}
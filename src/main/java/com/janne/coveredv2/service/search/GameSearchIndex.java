@@ -0,0 +1,139 @@
+package com.janne.coveredv2.service.search;
+
+import com.janne.coveredv2.dtos.GameNameRow;
+import com.janne.coveredv2.entities.Game;
+import com.janne.coveredv2.repositories.GameRepository;
+import com.janne.coveredv2.service.ingestion.GamesCreatedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory search index over game names, used instead of a leading-wildcard LIKE on every keystroke.
+ * - built from a streamed scan of (uuid, name) rows at startup and rebuilt on a slow schedule, which also
+ *   picks up games created by other replicas
+ * - games created or saved by this instance are indexed immediately
+ * - until the first build finished, searches are answered by the database
+ */
+@Slf4j
+@Service
+public class GameSearchIndex {
+
+	private final GameRepository gameRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Timer searchTimer;
+	@Value("${app.search.min-similarity:0.4}")
+	private double minSimilarity;
+
+	private NgramIndex index;
+	// Updates that arrive while a rebuild scans the table; replayed onto the new index before it is swapped in
+	private List<Game> pendingUpdates;
+
+	public GameSearchIndex(GameRepository gameRepository, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+		this.gameRepository = gameRepository;
+		this.transactionTemplate = transactionTemplate;
+
+		this.searchTimer = Timer.builder("app_game_search_duration").register(meterRegistry);
+		Gauge.builder("app_game_search_index_size", this, GameSearchIndex::size).register(meterRegistry);
+	}
+
+	/**
+	 * Returns the uuids of the requested slice of ranked matches and the total number of matches,
+	 * or empty if the index is not built yet.
+	 */
+	public Optional<GameSearchResult> search(String query, long offset, int limit) {
+		lock.readLock().lock();
+		try {
+			if (index == null) {
+				return Optional.empty();
+			}
+			return Optional.of(searchTimer.record(() -> index.search(query, offset, limit, minSimilarity)));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void index(Game game) {
+		if (game == null || game.getUuid() == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (pendingUpdates != null) {
+				pendingUpdates.add(game);
+			}
+			if (index != null) {
+				index.put(game.getUuid(), game.getName());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@EventListener
+	public void onGamesCreated(GamesCreatedEvent event) {
+		event.games().forEach(this::index);
+	}
+
+	@Scheduled(initialDelayString = "${app.search.initial-delay:0s}", fixedDelayString = "${app.search.rebuild-interval:30m}")
+	public void rebuild() {
+		lock.writeLock().lock();
+		try {
+			pendingUpdates = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		long start = System.currentTimeMillis();
+		NgramIndex rebuilt = new NgramIndex();
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				try (Stream<GameNameRow> rows = gameRepository.streamGameNames()) {
+					rows.forEach(row -> rebuilt.put(row.uuid(), row.name()));
+				}
+			});
+		} catch (RuntimeException e) {
+			log.warn("Failed to rebuild game search index, keeping the previous one", e);
+			lock.writeLock().lock();
+			try {
+				pendingUpdates = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			pendingUpdates.forEach(game -> rebuilt.put(game.getUuid(), game.getName()));
+			pendingUpdates = null;
+			index = rebuilt;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Built game search index with {} games in {}ms", rebuilt.size(), System.currentTimeMillis() - start);
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index == null ? 0 : index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package com.janne.coveredv2.service.search;
+
+import java.util.List;
+
+/**
+ * Uuids of one page of ranked search matches, plus the number of all matches.
+ */
+public record GameSearchResult(List<String> uuids, long total) {
+}
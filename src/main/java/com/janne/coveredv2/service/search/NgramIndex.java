@@ -0,0 +1,266 @@
+package com.janne.coveredv2.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Trigram index over game names. Not thread-safe; {@link GameSearchIndex} guards it.
+ * - names are normalized (lower case, no diacritics, only letters and digits) and split into words
+ * - every word is padded like pg_trgm ("  word ") so word starts carry their own trigrams
+ * - the last query word is not padded at its end, so a partially typed word matches as a prefix
+ * - a name matches if it shares at least {@code minSimilarity} of the query's trigrams, which tolerates typos
+ * - ids of removed names are freed by compacting all ids once more than half of them are unused
+ */
+final class NgramIndex {
+
+	private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final int MIN_REMOVED_IDS_TO_COMPACT = 1024;
+
+	private final Map<String, Integer> idsByUuid = new HashMap<>();
+	private final List<String> uuids = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+	private final Map<String, Postings> postings = new HashMap<>();
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	void put(String uuid, String name) {
+		String normalized = normalize(name);
+		Integer existing = idsByUuid.get(uuid);
+		if (existing != null) {
+			if (normalized.equals(names.get(existing))) {
+				return;
+			}
+			remove(uuid);
+		}
+		int id = uuids.size();
+		uuids.add(uuid);
+		names.add(normalized);
+		idsByUuid.put(uuid, id);
+		for (String trigram : trigrams(normalized, false)) {
+			postings.computeIfAbsent(trigram, key -> new Postings()).add(id);
+		}
+		size++;
+	}
+
+	void remove(String uuid) {
+		Integer id = idsByUuid.remove(uuid);
+		if (id == null) {
+			return;
+		}
+		for (String trigram : trigrams(names.get(id), false)) {
+			Postings ids = postings.get(trigram);
+			if (ids != null && ids.remove(id) && ids.size == 0) {
+				postings.remove(trigram);
+			}
+		}
+		// Ids are never reused; the slot stays empty until the next compaction
+		uuids.set(id, null);
+		names.set(id, null);
+		size--;
+		int removedIds = uuids.size() - size;
+		if (removedIds >= MIN_REMOVED_IDS_TO_COMPACT && removedIds > size) {
+			compact();
+		}
+	}
+
+	/**
+	 * Renumbers the remaining names without gaps. Ids keep their order, so the postings stay sorted by insertion.
+	 */
+	private void compact() {
+		int[] newIds = new int[uuids.size()];
+		int next = 0;
+		for (int id = 0; id < uuids.size(); id++) {
+			String uuid = uuids.get(id);
+			if (uuid == null) {
+				continue;
+			}
+			newIds[id] = next;
+			uuids.set(next, uuid);
+			names.set(next, names.get(id));
+			idsByUuid.put(uuid, next);
+			next++;
+		}
+		uuids.subList(next, uuids.size()).clear();
+		names.subList(next, names.size()).clear();
+		for (Postings ids : postings.values()) {
+			for (int i = 0; i < ids.size; i++) {
+				ids.ids[i] = newIds[ids.ids[i]];
+			}
+		}
+	}
+
+	int idCount() {
+		return uuids.size();
+	}
+
+	/**
+	 * Ranks all matching names and returns the uuids of the requested slice together with the total match count.
+	 */
+	GameSearchResult search(String query, long offset, int limit, double minSimilarity) {
+		String normalized = normalize(query);
+		Set<String> queryTrigrams = trigrams(normalized, true);
+		if (queryTrigrams.isEmpty()) {
+			return new GameSearchResult(List.of(), 0);
+		}
+
+		List<Postings> matching = new ArrayList<>(queryTrigrams.size());
+		int hits = 0;
+		for (String trigram : queryTrigrams) {
+			Postings ids = postings.get(trigram);
+			if (ids != null) {
+				matching.add(ids);
+				hits += ids.size;
+			}
+		}
+		// Sized by the postings of the query, not by the whole index, so a rare query allocates little
+		HitCounts shared = new HitCounts(hits);
+		for (Postings ids : matching) {
+			for (int i = 0; i < ids.size; i++) {
+				shared.increment(ids.ids[i]);
+			}
+		}
+
+		int minShared = Math.max(1, (int) Math.ceil(queryTrigrams.size() * minSimilarity));
+		long keep = Math.min(offset + limit, Integer.MAX_VALUE - 1);
+		Comparator<Match> ranking = Comparator.comparingDouble(Match::score).reversed()
+				.thenComparingInt(match -> match.name().length())
+				.thenComparing(Match::name);
+		// Heap of the best matches seen so far, worst on top, bounded to the requested slice
+		PriorityQueue<Match> best = new PriorityQueue<>(ranking.reversed());
+		long total = 0;
+		for (int slot = 0; slot < shared.ids.length; slot++) {
+			int id = shared.ids[slot];
+			if (id == HitCounts.EMPTY || shared.counts[slot] < minShared) {
+				continue;
+			}
+			String name = names.get(id);
+			total++;
+			if (keep == 0) {
+				continue;
+			}
+			Match match = new Match(id, name, score(normalized, name, shared.counts[slot], queryTrigrams.size()));
+			if (best.size() < keep) {
+				best.add(match);
+			} else if (ranking.compare(match, best.peek()) < 0) {
+				best.poll();
+				best.add(match);
+			}
+		}
+
+		List<Match> ranked = new ArrayList<>(best);
+		ranked.sort(ranking);
+		List<String> page = ranked.stream()
+				.skip(offset)
+				.map(match -> uuids.get(match.id()))
+				.toList();
+		return new GameSearchResult(page, total);
+	}
+
+	private static double score(String query, String name, int shared, int queryTrigrams) {
+		double score = (double) shared / queryTrigrams;
+		if (name.equals(query)) {
+			score += 2;
+		} else if (name.startsWith(query)) {
+			score += 1;
+		} else if (name.contains(query)) {
+			score += 0.5;
+		}
+		return score;
+	}
+
+	static String normalize(String name) {
+		if (name == null) {
+			return "";
+		}
+		String decomposed = DIACRITICS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+		return NON_ALPHANUMERIC.matcher(decomposed.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+	}
+
+	private static Set<String> trigrams(String normalized, boolean prefixLastWord) {
+		Set<String> trigrams = new LinkedHashSet<>();
+		if (normalized.isEmpty()) {
+			return trigrams;
+		}
+		String[] words = normalized.split(" ");
+		for (int w = 0; w < words.length; w++) {
+			String padded = "  " + words[w] + (prefixLastWord && w == words.length - 1 ? "" : " ");
+			for (int i = 0; i + 3 <= padded.length(); i++) {
+				trigrams.add(padded.substring(i, i + 3));
+			}
+		}
+		return trigrams;
+	}
+
+	private record Match(int id, String name, double score) {
+	}
+
+	/**
+	 * Open addressing map from document id to the number of query trigrams it shares, sized up front for at most
+	 * {@code maxIds} distinct ids.
+	 */
+	private static final class HitCounts {
+		private static final int EMPTY = -1;
+
+		private final int[] ids;
+		private final int[] counts;
+		private final int mask;
+
+		HitCounts(int maxIds) {
+			// At most half full, so probes stay short
+			int capacity = Integer.highestOneBit(Math.max(8, maxIds) * 2 - 1) << 1;
+			ids = new int[capacity];
+			counts = new int[capacity];
+			mask = capacity - 1;
+			Arrays.fill(ids, EMPTY);
+		}
+
+		void increment(int id) {
+			int slot = (id * 0x9E3779B9) & mask;
+			while (ids[slot] != EMPTY && ids[slot] != id) {
+				slot = (slot + 1) & mask;
+			}
+			ids[slot] = id;
+			counts[slot]++;
+		}
+	}
+
+	/**
+	 * Growable list of document ids, in insertion order.
+	 */
+	private static final class Postings {
+		private int[] ids = new int[4];
+		private int size;
+
+		void add(int id) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		boolean remove(int id) {
+			for (int i = 0; i < size; i++) {
+				if (ids[i] == id) {
+					System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+					size--;
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.janne.coveredv2.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.janne.coveredv2.config.SecurityConfig;
+import com.janne.coveredv2.dtos.CoverJson;
+import com.janne.coveredv2.entities.Cover;
+import com.janne.coveredv2.service.CoverService;
+import com.janne.coveredv2.service.MetricService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Binary encodings must carry the covers themselves, never the pre-serialized JSON fragments.
+ */
+@WebMvcTest(CoverController.class)
+@Import(SecurityConfig.class)
+@ActiveProfiles("test")
+class CoverControllerTests {
+
+	private static final String GAME_UUID = "0192a7c0-0000-7000-8000-000000000001";
+	private static final String COVER_UUID = "0192a7c0-0000-7000-8000-000000000002";
+
+	@Autowired
+	private MockMvc mockMvc;
+	@Autowired
+	private ObjectMapper objectMapper;
+	@MockitoBean
+	private CoverService coverService;
+	@MockitoBean
+	private MetricService metricService;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Cover cover = Cover.builder().uuid(COVER_UUID).gameUuid(GAME_UUID).steamGridDbId(7).width(600).height(900).build();
+		when(coverService.getCoversFromGameId(GAME_UUID)).thenReturn(List.of(cover));
+		when(coverService.getCoverJsonFromGameId(GAME_UUID))
+				.thenReturn(new CoverJson(List.of(objectMapper.writeValueAsBytes(cover))));
+	}
+
+	@Test
+	void gameCoversAsJsonAreAnArrayOfCovers() throws Exception {
+		MvcResult result = mockMvc.perform(get("/api/v1/covers/game/" + GAME_UUID).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andReturn();
+
+		assertCovers(objectMapper.readValue(result.getResponse().getContentAsByteArray(), new TypeReference<>() {
+		}));
+	}
+
+	@Test
+	void gameCoversAsCborAreAnArrayOfCovers() throws Exception {
+		MvcResult result = mockMvc.perform(get("/api/v1/covers/game/" + GAME_UUID).accept(MediaType.APPLICATION_CBOR))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+				.andReturn();
+
+		assertCovers(new CBORMapper().readValue(result.getResponse().getContentAsByteArray(), new TypeReference<>() {
+		}));
+	}
+
+	@Test
+	void gameCoversAsSmileAreAnArrayOfCovers() throws Exception {
+		MvcResult result = mockMvc.perform(get("/api/v1/covers/game/" + GAME_UUID).accept("application/x-jackson-smile"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("application/x-jackson-smile"))
+				.andReturn();
+
+		assertCovers(new SmileMapper().readValue(result.getResponse().getContentAsByteArray(), new TypeReference<>() {
+		}));
+	}
+
+	private static void assertCovers(List<Map<String, Object>> covers) {
+		assertThat(covers).hasSize(1);
+		assertThat(covers.getFirst()).containsEntry("uuid", COVER_UUID).doesNotContainKey("fragments");
+	}
+}
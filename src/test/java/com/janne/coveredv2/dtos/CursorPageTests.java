@@ -0,0 +1,41 @@
+package com.janne.coveredv2.dtos;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CursorPageTests {
+
+	private static final String KEY = "0192a7c0-0000-7000-8000-000000000001";
+
+	@Test
+	void cursorRoundTripsTheKey() {
+		String cursor = CursorPage.encodeCursor(KEY);
+
+		assertThat(cursor).doesNotContain("=", "+", "/");
+		assertThat(CursorPage.decodeCursor(cursor)).isEqualTo(KEY);
+	}
+
+	@Test
+	void missingCursorStartsAtTheFirstPage() {
+		assertThat(CursorPage.decodeCursor(null)).isNull();
+		assertThat(CursorPage.decodeCursor(" ")).isNull();
+	}
+
+	@Test
+	void malformedCursorsAreBadRequests() {
+		String notAUuid = Base64.getUrlEncoder().withoutPadding().encodeToString("'; DROP TABLE game".getBytes(StandardCharsets.UTF_8));
+
+		for (String cursor : new String[]{"not base64!", notAUuid}) {
+			assertThatThrownBy(() -> CursorPage.decodeCursor(cursor))
+					.isInstanceOfSatisfying(ResponseStatusException.class,
+							e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.janne.coveredv2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.janne.coveredv2.dtos.CoverJson;
+import com.janne.coveredv2.entities.Cover;
+import com.janne.coveredv2.repositories.CoverRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Responses assembled from cached fragments must be byte for byte what Jackson writes for the same covers.
+ */
+@JsonTest
+@ActiveProfiles("test")
+class CoverJsonCacheTests {
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final List<Cover> firstGameCovers = List.of(
+			cover("c1", "game-1", "Ünïcödé \"quoted\" author"),
+			cover("c2", "game-1", null));
+	private final List<Cover> thirdGameCovers = List.of(cover("c3", "game-3", "author"));
+
+	private CoverJsonCache coverJsonCache;
+
+	@BeforeEach
+	void setUp() {
+		CoverRepository coverRepository = mock(CoverRepository.class);
+		when(coverRepository.findByGameUuidIn(anyCollection()))
+				.thenReturn(Stream.concat(firstGameCovers.stream(), thirdGameCovers.stream()).toList());
+		when(coverRepository.getCoversByGameUuid(anyString())).thenReturn(firstGameCovers);
+
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		CoverCache coverCache = new CoverCache(coverRepository, 1000, Duration.ofHours(1), Duration.ofSeconds(30), meterRegistry);
+		coverJsonCache = new CoverJsonCache(coverCache, objectMapper, DataSize.ofMegabytes(1),
+				Duration.ofHours(1), Duration.ofSeconds(30), meterRegistry);
+	}
+
+	@Test
+	void multipleGamesMatchJacksonOutput() throws IOException {
+		List<String> gameUuids = List.of("game-3", "game-2", "game-1", "game-3");
+		byte[] expected = objectMapper.writeValueAsBytes(
+				Stream.concat(thirdGameCovers.stream(), firstGameCovers.stream()).toList());
+
+		assertWritten(coverJsonCache.getCoverJson(gameUuids), expected);
+		// Second call is served from the cache
+		assertWritten(coverJsonCache.getCoverJson(gameUuids), expected);
+	}
+
+	@Test
+	void singleGameMatchesJacksonOutput() throws IOException {
+		assertWritten(coverJsonCache.getCoverJson("game-1"), objectMapper.writeValueAsBytes(firstGameCovers));
+	}
+
+	@Test
+	void gamesWithoutCoversMatchJacksonOutput() throws IOException {
+		assertWritten(coverJsonCache.getCoverJson("game-2"), objectMapper.writeValueAsBytes(List.of()));
+		assertWritten(coverJsonCache.getCoverJson(List.of()), objectMapper.writeValueAsBytes(List.of()));
+	}
+
+	private static void assertWritten(CoverJson coverJson, byte[] expected) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		coverJson.writeTo(outputStream);
+		assertThat(outputStream.toByteArray()).isEqualTo(expected);
+		assertThat(coverJson.contentLength()).isEqualTo(expected.length);
+	}
+
+	private static Cover cover(String uuid, String gameUuid, String authorName) {
+		return Cover.builder()
+				.uuid(uuid)
+				.steamGridDbId(uuid.hashCode())
+				.style("alternate")
+				.gameUuid(gameUuid)
+				.width(600)
+				.height(900)
+				.nsfw(false)
+				.humor(true)
+				.mime("image/png")
+				.language("en")
+				.thumb("https://cdn.example/thumb/" + uuid + ".png")
+				.url("https://cdn.example/grid/" + uuid + ".png")
+				.author(authorName == null ? null : Cover.Author.builder()
+						.name(authorName)
+						.steam64("76561197960265728")
+						.avatar("https://cdn.example/avatar.png")
+						.build())
+				.build();
+	}
+}
@@ -0,0 +1,152 @@
+package com.janne.coveredv2.service;
+
+import com.janne.coveredv2.entities.Cover;
+import com.janne.coveredv2.repositories.CoverRepository;
+import com.janne.coveredv2.repositories.GameRepository;
+import com.janne.coveredv2.service.apis.SteamGridDBApiService;
+import com.janne.coveredv2.service.ingestion.CoverFetchEventBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoverServiceTests {
+
+	private static final String PORTAL = "0192a7c0-0000-7000-8000-000000000001";
+	private static final String PORTAL_2 = "0192a7c0-0000-7000-8000-000000000002";
+
+	private final CoverRepository coverRepository = mock(CoverRepository.class);
+	private final CoverCache coverCache = mock(CoverCache.class);
+	private final CoverJsonCache coverJsonCache = mock(CoverJsonCache.class);
+
+	private EntityCountService entityCountService;
+	private CoverService coverService;
+
+	@BeforeEach
+	void setUp() {
+		entityCountService = new EntityCountService(mock(GameRepository.class), coverRepository, new SimpleMeterRegistry());
+		when(coverRepository.count()).thenReturn(10L);
+		entityCountService.reconcile();
+
+		coverService = new CoverService(mock(SteamGridDBApiService.class), coverRepository, mock(GameRepository.class),
+				mock(ExportDownloadExecutor.class), mock(ImageDiskCache.class), mock(CoverFetchEventBus.class),
+				coverCache, coverJsonCache, entityCountService);
+	}
+
+	@Test
+	void reingestedCoversUpdateTheStoredRows() {
+		Cover stored = cover("0192a7c0-0000-7000-8000-000000000011", 7, PORTAL, "https://cdn/7-old.png");
+		Cover unchanged = cover("0192a7c0-0000-7000-8000-000000000012", 9, PORTAL, "https://cdn/9.png");
+		when(coverRepository.findBySteamGridDbIdIn(anyCollection())).thenReturn(List.of(stored, unchanged));
+
+		List<Cover> result = coverService.saveCovers(new Cover[]{
+				cover(null, 7, PORTAL, "https://cdn/7-new.png"),
+				cover(null, 8, PORTAL, "https://cdn/8.png"),
+				cover(null, 9, PORTAL, "https://cdn/9.png")
+		});
+
+		List<List<Cover>> saved = capturedSaveAlls();
+		assertThat(saved.get(0)).extracting(Cover::getSteamGridDbId).containsExactly(8L);
+		assertThat(saved.get(1)).containsExactly(stored);
+		assertThat(stored.getUrl()).isEqualTo("https://cdn/7-new.png");
+		// Known grids keep their stored rows, and with them their uuids
+		assertThat(result).extracting(Cover::getSteamGridDbId).containsExactly(7L, 8L, 9L);
+		assertThat(result.get(0)).isSameAs(stored);
+		assertThat(result.get(2)).isSameAs(unchanged);
+		assertThat(entityCountService.getCoverCount()).isEqualTo(11);
+		verify(coverCache).invalidate(Set.of(PORTAL));
+	}
+
+	@Test
+	void unchangedCoversAreNotWritten() {
+		Cover stored = cover("0192a7c0-0000-7000-8000-000000000011", 7, PORTAL, "https://cdn/7.png");
+		when(coverRepository.findBySteamGridDbIdIn(anyCollection())).thenReturn(List.of(stored));
+
+		List<Cover> result = coverService.saveCovers(new Cover[]{cover(null, 7, PORTAL, "https://cdn/7.png")});
+
+		assertThat(result).containsExactly(stored);
+		verify(coverRepository, never()).saveAll(any());
+		verify(coverCache, never()).invalidate(anyCollection());
+		assertThat(entityCountService.getCoverCount()).isEqualTo(10);
+	}
+
+	@Test
+	void gridMovedToAnotherGameUpdatesItsGame() {
+		Cover stored = cover("0192a7c0-0000-7000-8000-000000000011", 7, PORTAL, "https://cdn/7.png");
+		when(coverRepository.findBySteamGridDbIdIn(anyCollection())).thenReturn(List.of(stored));
+
+		coverService.saveCovers(new Cover[]{cover(null, 7, PORTAL_2, "https://cdn/7.png")});
+
+		List<List<Cover>> saved = capturedSaveAlls();
+		assertThat(saved.get(0)).isEmpty();
+		assertThat(saved.get(1)).containsExactly(stored);
+		assertThat(stored.getGameUuid()).isEqualTo(PORTAL_2);
+		assertThat(entityCountService.getCoverCount()).isEqualTo(10);
+		verify(coverCache).invalidate(Set.of(PORTAL, PORTAL_2));
+		verify(coverJsonCache).invalidate(Set.of(PORTAL, PORTAL_2));
+	}
+
+	@Test
+	void unlistedCoversAreDeleted() {
+		Cover listed = cover("0192a7c0-0000-7000-8000-000000000011", 7, PORTAL, "https://cdn/7.png");
+		Cover unlisted = cover("0192a7c0-0000-7000-8000-000000000012", 8, PORTAL, "https://cdn/8.png");
+		Cover otherGame = cover("0192a7c0-0000-7000-8000-000000000013", 9, PORTAL_2, "https://cdn/9.png");
+		when(coverRepository.findByGameUuidIn(anyCollection())).thenReturn(List.of(listed, unlisted, otherGame));
+
+		int deleted = coverService.deleteUnlistedCovers(Map.of(PORTAL, Set.of(7L), PORTAL_2, Set.of(9L)));
+
+		assertThat(deleted).isEqualTo(1);
+		verify(coverRepository).deleteAllInBatch(List.of(unlisted));
+		assertThat(entityCountService.getCoverCount()).isEqualTo(9);
+		verify(coverCache).invalidate(Set.of(PORTAL));
+		verify(coverJsonCache).invalidate(Set.of(PORTAL));
+	}
+
+	@Test
+	void fullyListedGamesKeepTheirCovers() {
+		Cover listed = cover("0192a7c0-0000-7000-8000-000000000011", 7, PORTAL, "https://cdn/7.png");
+		when(coverRepository.findByGameUuidIn(anyCollection())).thenReturn(List.of(listed));
+
+		assertThat(coverService.deleteUnlistedCovers(Map.of(PORTAL, Set.of(7L)))).isZero();
+
+		verify(coverRepository, never()).deleteAllInBatch(any());
+		assertThat(entityCountService.getCoverCount()).isEqualTo(10);
+	}
+
+	/**
+	 * The inserted and the updated covers of the single saveCovers call, in that order.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<List<Cover>> capturedSaveAlls() {
+		ArgumentCaptor<List<Cover>> saved = ArgumentCaptor.forClass(List.class);
+		verify(coverRepository, times(2)).saveAll(saved.capture());
+		return saved.getAllValues();
+	}
+
+	private static Cover cover(String uuid, long gridId, String gameUuid, String url) {
+		return Cover.builder()
+				.uuid(uuid)
+				.steamGridDbId(gridId)
+				.gameUuid(gameUuid)
+				.style("alternate")
+				.width(600)
+				.height(900)
+				.mime("image/png")
+				.url(url)
+				.thumb(url)
+				.build();
+	}
+}
@@ -0,0 +1,146 @@
+package com.janne.coveredv2.service;
+
+import com.janne.coveredv2.dtos.GameWithPlaytime;
+import com.janne.coveredv2.dtos.steamapi.UserGameLibraryDto;
+import com.janne.coveredv2.entities.Game;
+import com.janne.coveredv2.repositories.CoverRepository;
+import com.janne.coveredv2.repositories.GameRepository;
+import com.janne.coveredv2.service.apis.SteamApiService;
+import com.janne.coveredv2.service.ingestion.CoverIngestionQueue;
+import com.janne.coveredv2.service.ingestion.GamesCreatedEvent;
+import com.janne.coveredv2.service.search.GameSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GameServiceTests {
+
+	private static final long STEAM_USER_ID = 76561197960287930L;
+
+	private final GameRepository gameRepository = mock(GameRepository.class);
+	private final SteamApiService steamApiService = mock(SteamApiService.class);
+	private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+	private EntityCountService entityCountService;
+	private GameService gameService;
+
+	@BeforeEach
+	void setUp() {
+		entityCountService = new EntityCountService(gameRepository, mock(CoverRepository.class), new SimpleMeterRegistry());
+
+		// Runs the callback like a transaction: synchronizations only see afterCommit if it returned normally
+		TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+		when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+			TransactionSynchronizationManager.initSynchronization();
+			try {
+				Object result = invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+				TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+				return result;
+			} finally {
+				TransactionSynchronizationManager.clearSynchronization();
+			}
+		});
+		when(steamApiService.buildGameFromSteamGameId(any(), any(), any())).thenAnswer(invocation ->
+				Game.builder().steamId(invocation.getArgument(0)).name(invocation.getArgument(1)).build());
+
+		gameService = new GameService(gameRepository, steamApiService, transactionTemplate, eventPublisher,
+				mock(CoverIngestionQueue.class), mock(GameSearchIndex.class), entityCountService);
+	}
+
+	@Test
+	void concurrentlyInsertedGamesAreReusedOnRetry() {
+		library(400, "Portal", 620, "Portal 2", 70, "Half-Life");
+		Game portal = storedGame(400, "Portal", "0192a7c0-0000-7000-8000-000000000001");
+		Game portal2 = storedGame(620, "Portal 2", "0192a7c0-0000-7000-8000-000000000002");
+		// Another request inserted both Portals between our lookup and our insert
+		when(gameRepository.findBySteamIdIn(anyCollection()))
+				.thenReturn(List.of())
+				.thenReturn(List.of(portal, portal2));
+		when(gameRepository.saveAll(anyList()))
+				.thenThrow(new DataIntegrityViolationException("uk_game_steam_id"))
+				.thenAnswer(invocation -> {
+					List<Game> games = invocation.getArgument(0);
+					games.forEach(game -> game.setUuid("0192a7c0-0000-7000-8000-000000000003"));
+					return games;
+				});
+
+		GameWithPlaytime[] games = gameService.getGamesFromPlayer(STEAM_USER_ID);
+
+		assertThat(Arrays.stream(games).map(GameWithPlaytime::getGame))
+				.extracting(Game::getSteamId)
+				.containsExactly(400L, 620L, 70L);
+		assertThat(games[0].getGame()).isSameAs(portal);
+		assertThat(games[1].getGame()).isSameAs(portal2);
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<Game>> inserted = ArgumentCaptor.forClass(List.class);
+		verify(gameRepository, times(2)).saveAll(inserted.capture());
+		assertThat(inserted.getAllValues().get(0)).extracting(Game::getSteamId).containsExactlyInAnyOrder(400L, 620L, 70L);
+		assertThat(inserted.getAllValues().get(1)).extracting(Game::getSteamId).containsExactly(70L);
+
+		// Only the committed retry counts, and only the game it created
+		assertThat(entityCountService.getGameCount()).isEqualTo(1);
+		ArgumentCaptor<GamesCreatedEvent> created = ArgumentCaptor.forClass(GamesCreatedEvent.class);
+		verify(eventPublisher).publishEvent(created.capture());
+		assertThat(created.getValue().games()).extracting(Game::getSteamId).containsExactly(70L);
+	}
+
+	@Test
+	void upsertGivesUpAfterRepeatedConflicts() {
+		library(400, "Portal");
+		when(gameRepository.findBySteamIdIn(anyCollection())).thenReturn(List.of());
+		when(gameRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("uk_game_steam_id"));
+
+		assertThatThrownBy(() -> gameService.getGamesFromPlayer(STEAM_USER_ID)).isInstanceOf(DataIntegrityViolationException.class);
+
+		verify(gameRepository, times(3)).saveAll(anyList());
+		assertThat(entityCountService.getGameCount()).isZero();
+		verify(eventPublisher, never()).publishEvent(any());
+	}
+
+	private void library(Object... appIdsAndNames) {
+		List<UserGameLibraryDto.Game> games = new ArrayList<>();
+		for (int i = 0; i < appIdsAndNames.length; i += 2) {
+			UserGameLibraryDto.Game game = new UserGameLibraryDto.Game();
+			game.setAppid(((Integer) appIdsAndNames[i]).longValue());
+			game.setName((String) appIdsAndNames[i + 1]);
+			games.add(game);
+		}
+		UserGameLibraryDto.Response response = new UserGameLibraryDto.Response();
+		response.setGames(games);
+		UserGameLibraryDto library = new UserGameLibraryDto();
+		library.setResponse(response);
+		when(steamApiService.getUserGameLibrary(STEAM_USER_ID)).thenReturn(Mono.just(library));
+	}
+
+	private static Game storedGame(long steamId, String name, String uuid) {
+		return Game.builder()
+				.uuid(uuid)
+				.steamId(steamId)
+				.name(name)
+				.build();
+	}
+}
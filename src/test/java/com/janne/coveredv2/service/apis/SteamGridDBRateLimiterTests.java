@@ -0,0 +1,101 @@
+package com.janne.coveredv2.service.apis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SteamGridDBRateLimiterTests {
+
+	@Test
+	void callsBeyondTheBurstWaitForTokenRefill() {
+		SteamGridDBRateLimiter limiter = limiter(10, 20, 2, 10, Duration.ofSeconds(5));
+
+		long start = System.nanoTime();
+		List<Integer> results = Flux.range(0, 4)
+				.flatMap(i -> limiter.limit(Mono.just(i)))
+				.collectList()
+				.block(Duration.ofSeconds(5));
+		Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+		// Two calls use the burst, the other two wait for a token each at 20 per second
+		assertThat(results).containsExactlyInAnyOrder(0, 1, 2, 3);
+		assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis(90));
+	}
+
+	@Test
+	void waitersAreGrantedInArrivalOrder() {
+		SteamGridDBRateLimiter limiter = limiter(1, 1000, 1000, 1, Duration.ofSeconds(5));
+		Sinks.Empty<Void> blocker = Sinks.empty();
+		List<Integer> order = new CopyOnWriteArrayList<>();
+
+		limiter.limit(blocker.asMono()).subscribe();
+		for (int i = 0; i < 5; i++) {
+			int call = i;
+			limiter.limit(Mono.fromRunnable(() -> order.add(call))).subscribe();
+		}
+		assertThat(order).isEmpty();
+
+		blocker.tryEmitEmpty();
+		assertThat(order).containsExactly(0, 1, 2, 3, 4);
+		assertThat(limiter.getInFlight()).isZero();
+	}
+
+	@Test
+	void overloadResponsesShrinkTheLimitMultiplicatively() {
+		SteamGridDBRateLimiter limiter = limiter(8, 1000, 1000, 64, Duration.ofSeconds(5));
+
+		Mono<Object> tooManyRequests = Mono.error(WebClientResponseException.create(
+				HttpStatus.TOO_MANY_REQUESTS.value(), "Too Many Requests", null, null, null));
+		assertThatThrownBy(() -> limiter.limit(tooManyRequests).block()).isInstanceOf(WebClientResponseException.class);
+
+		assertThat(limiter.getLimit()).isEqualTo(4);
+		assertThat(limiter.getInFlight()).isZero();
+	}
+
+	@Test
+	void healthyResponsesGrowTheLimitWhileItIsUsed() {
+		SteamGridDBRateLimiter limiter = limiter(2, 1000, 1000, 64, Duration.ofSeconds(5));
+		Sinks.Empty<Void> first = Sinks.empty();
+		Sinks.Empty<Void> second = Sinks.empty();
+
+		limiter.limit(first.asMono()).subscribe();
+		limiter.limit(second.asMono()).subscribe();
+		first.tryEmitEmpty();
+
+		// The release with the limit fully used adds 1 / limit
+		assertThat(limiter.getLimit()).isEqualTo(2.5);
+		second.tryEmitEmpty();
+		assertThat(limiter.getInFlight()).isZero();
+	}
+
+	@Test
+	void waitingLongerThanMaxWaitFailsWithALocalTimeout() {
+		SteamGridDBRateLimiter limiter = limiter(1, 1000, 1000, 1, Duration.ofMillis(50));
+		Sinks.Empty<Void> blocker = Sinks.empty();
+		limiter.limit(blocker.asMono()).subscribe();
+
+		assertThatThrownBy(() -> limiter.limit(Mono.just(1)).block(Duration.ofSeconds(5)))
+				.isInstanceOf(SteamGridDBPermitTimeoutException.class);
+
+		blocker.tryEmitEmpty();
+		assertThat(limiter.getInFlight()).isZero();
+		assertThat(limiter.limit(Mono.just(1)).block(Duration.ofSeconds(5))).isEqualTo(1);
+	}
+
+	private static SteamGridDBRateLimiter limiter(int initialConcurrency, double tokensPerSecond, double burst,
+	                                              int maxConcurrency, Duration maxWait) {
+		return new SteamGridDBRateLimiter(initialConcurrency, tokensPerSecond, burst, 1, maxConcurrency, 0.5, 2.0,
+				maxWait, Duration.ofSeconds(1), new SimpleMeterRegistry());
+	}
+}
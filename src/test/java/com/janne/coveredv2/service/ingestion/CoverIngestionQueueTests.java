@@ -0,0 +1,206 @@
+package com.janne.coveredv2.service.ingestion;
+
+import com.janne.coveredv2.entities.Cover;
+import com.janne.coveredv2.entities.Game;
+import com.janne.coveredv2.repositories.CoverRepository;
+import com.janne.coveredv2.repositories.GameRepository;
+import com.janne.coveredv2.service.CoverCache;
+import com.janne.coveredv2.service.CoverJsonCache;
+import com.janne.coveredv2.service.CoverService;
+import com.janne.coveredv2.service.EntityCountService;
+import com.janne.coveredv2.service.ExportDownloadExecutor;
+import com.janne.coveredv2.service.ImageDiskCache;
+import com.janne.coveredv2.service.apis.SteamGridDBApiService;
+import com.janne.coveredv2.service.apis.SteamGridDBPermitTimeoutException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoverIngestionQueueTests {
+
+	private static final String INSTANCE_ID = "instance-1";
+
+	private final SteamGridDBApiService steamGridDBApiService = mock(SteamGridDBApiService.class);
+	private final CoverRepository coverRepository = mock(CoverRepository.class);
+	private final GameRepository gameRepository = mock(GameRepository.class);
+
+	private CoverService coverService;
+	private CoverIngestionQueue queue;
+
+	@BeforeEach
+	void setUp() {
+		coverService = new CoverService(steamGridDBApiService, coverRepository, gameRepository,
+				mock(ExportDownloadExecutor.class), mock(ImageDiskCache.class), mock(CoverFetchEventBus.class),
+				mock(CoverCache.class), mock(CoverJsonCache.class), mock(EntityCountService.class));
+
+		TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+		when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+			TransactionSynchronizationManager.initSynchronization();
+			try {
+				return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+			} finally {
+				TransactionSynchronizationManager.clearSynchronization();
+			}
+		});
+		queue = new CoverIngestionQueue(gameRepository, coverService, transactionTemplate,
+				mock(ApplicationEventPublisher.class), mock(CoverFetchEventBus.class), new SimpleMeterRegistry(),
+				INSTANCE_ID, Duration.ofMinutes(5), 6, 3, 1, Duration.ofDays(1), 1000);
+		ReflectionTestUtils.setField(queue, "initialBackoff", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(queue, "maxBackoff", Duration.ofHours(6));
+		ReflectionTestUtils.setField(queue, "maxAttempts", 8);
+	}
+
+	@Test
+	void refreshOfGameMissingOnSteamGridDbKeepsStoredCovers() {
+		Game game = claimedGame(1L);
+		Cover storedCover = Cover.builder()
+				.uuid("0192a7c0-0000-7000-8000-000000000002")
+				.gameUuid(game.getUuid())
+				.steamGridDbId(7)
+				.build();
+		when(steamGridDBApiService.getAllGridsFromGridDbId(anyLong(), any(), any()))
+				.thenReturn(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
+		when(gameRepository.lockAllByUuidIn(anyCollection())).thenReturn(List.of(game));
+		when(coverRepository.findByGameUuidIn(anyCollection())).thenReturn(List.of(storedCover));
+
+		CoverFetchResult result = coverService.fetchCoversForGame(game).block();
+
+		assertThat(result).isNotNull();
+		assertThat(result.isSuccess()).isTrue();
+		assertThat(result.complete()).isFalse();
+
+		queue.completeAll(List.of(result));
+
+		verify(gameRepository).markSteamGridDbMissing(anyString(), anyLong());
+		verify(coverRepository, never()).deleteAllInBatch(any());
+		assertThat(game.getTimeOfLastCoverFetch()).isGreaterThan(1L);
+	}
+
+	@Test
+	void permitTimeoutIsNoFetchAttempt() {
+		Game game = claimedGame(null);
+		game.setCoverFetchAttempts(7);
+		when(gameRepository.lockAllByUuidIn(anyCollection())).thenReturn(List.of(game));
+
+		long before = System.currentTimeMillis();
+		queue.completeAll(List.of(CoverFetchResult.failure(game, new SteamGridDBPermitTimeoutException())));
+
+		assertThat(game.getCoverFetchAttempts()).isEqualTo(7);
+		assertThat(game.getCoverFetchDeadLettered()).isNull();
+		assertThat(game.getNextCoverFetchAttemptAt()).isBetween(before + 15_000, System.currentTimeMillis() + 30_000);
+	}
+
+	@Test
+	void failedFetchBacksOffExponentiallyWithJitter() {
+		Game game = claimedGame(null);
+		game.setCoverFetchAttempts(2);
+		when(gameRepository.lockAllByUuidIn(anyCollection())).thenReturn(List.of(game));
+
+		long before = System.currentTimeMillis();
+		queue.completeAll(List.of(CoverFetchResult.failure(game, new IllegalStateException("boom"))));
+
+		// Third attempt: 30s * 2^2 = 120s, half of it fixed and half random
+		assertThat(game.getCoverFetchAttempts()).isEqualTo(3);
+		assertThat(game.getNextCoverFetchAttemptAt()).isBetween(before + 60_000, System.currentTimeMillis() + 120_000);
+		assertThat(game.getLastCoverFetchError()).contains("boom");
+		assertThat(game.getCoverFetchLeaseOwner()).isNull();
+	}
+
+	@Test
+	void backoffIsCappedAtMaxBackoff() {
+		Game game = claimedGame(1L);
+		game.setCoverFetchAttempts(40);
+		when(gameRepository.lockAllByUuidIn(anyCollection())).thenReturn(List.of(game));
+
+		long before = System.currentTimeMillis();
+		queue.completeAll(List.of(CoverFetchResult.failure(game, new IllegalStateException("boom"))));
+
+		long maxBackoff = Duration.ofHours(6).toMillis();
+		assertThat(game.getNextCoverFetchAttemptAt()).isBetween(before + maxBackoff / 2, System.currentTimeMillis() + maxBackoff);
+	}
+
+	@Test
+	void gameWithoutCoversIsDeadLetteredAfterMaxAttempts() {
+		Game game = claimedGame(null);
+		game.setCoverFetchAttempts(7);
+		when(gameRepository.lockAllByUuidIn(anyCollection())).thenReturn(List.of(game));
+
+		queue.completeAll(List.of(CoverFetchResult.failure(game, new IllegalStateException("boom"))));
+
+		assertThat(game.getCoverFetchDeadLettered()).isTrue();
+		assertThat(game.getNextCoverFetchAttemptAt()).isNull();
+	}
+
+	@Test
+	void failedRefreshIsNeverDeadLettered() {
+		Game game = claimedGame(1L);
+		game.setCoverFetchAttempts(7);
+		when(gameRepository.lockAllByUuidIn(anyCollection())).thenReturn(List.of(game));
+
+		queue.completeAll(List.of(CoverFetchResult.failure(game, new IllegalStateException("boom"))));
+
+		assertThat(game.getCoverFetchAttempts()).isEqualTo(8);
+		assertThat(game.getCoverFetchDeadLettered()).isNull();
+		assertThat(game.getNextCoverFetchAttemptAt()).isNotNull();
+	}
+
+	@Test
+	void resultIsDiscardedWhenTheLeaseWasLost() {
+		Game game = claimedGame(null);
+		game.setCoverFetchLeaseOwner("instance-2");
+		when(gameRepository.lockAllByUuidIn(anyCollection())).thenReturn(List.of(game));
+
+		List<CoverFetchResult> completed = queue.completeAll(List.of(CoverFetchResult.failure(game, new IllegalStateException("boom"))));
+
+		assertThat(completed).isEmpty();
+		assertThat(game.getCoverFetchAttempts()).isNull();
+		assertThat(game.getCoverFetchLeaseOwner()).isEqualTo("instance-2");
+	}
+
+	@Test
+	void laneQuotasAddUpToTheClaimLimit() {
+		for (int limit = 0; limit <= 25; limit++) {
+			assertThat(queue.laneQuotas(limit).values().stream().mapToInt(Integer::intValue).sum()).isEqualTo(limit);
+		}
+		assertThat(queue.laneQuotas(100)).containsExactlyInAnyOrderEntriesOf(Map.of(
+				IngestionLane.INTERACTIVE, 60, IngestionLane.POPULAR, 30, IngestionLane.BACKGROUND, 10));
+		// Weights 6:3:1 of 4 floor to 2, 1, 0; the remaining game goes to the heaviest lane
+		assertThat(queue.laneQuotas(4)).containsExactlyInAnyOrderEntriesOf(Map.of(
+				IngestionLane.INTERACTIVE, 3, IngestionLane.POPULAR, 1, IngestionLane.BACKGROUND, 0));
+		assertThat(queue.laneQuotas(1)).containsExactlyInAnyOrderEntriesOf(Map.of(
+				IngestionLane.INTERACTIVE, 1, IngestionLane.POPULAR, 0, IngestionLane.BACKGROUND, 0));
+	}
+
+	private static Game claimedGame(Long timeOfLastCoverFetch) {
+		return Game.builder()
+				.uuid("0192a7c0-0000-7000-8000-000000000001")
+				.name("Portal")
+				.steamId(400L)
+				.steamGridDbId(42L)
+				.timeOfLastCoverFetch(timeOfLastCoverFetch)
+				.coverFetchLeaseOwner(INSTANCE_ID)
+				.build();
+	}
+}
@@ -0,0 +1,96 @@
+package com.janne.coveredv2.service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NgramIndexTests {
+
+	private static final double MIN_SIMILARITY = 0.4;
+
+	private NgramIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new NgramIndex();
+		index.put("portal", "Portal");
+		index.put("portal-2", "Portal 2");
+		index.put("half-life", "Half-Life");
+		index.put("okonomie", "Ökonomie: Let's Go!");
+	}
+
+	@Test
+	void namesAreNormalized() {
+		assertThat(NgramIndex.normalize("Ökonomie: Let's Go!")).isEqualTo("okonomie let s go");
+		assertThat(NgramIndex.normalize(null)).isEmpty();
+		assertThat(index.search("OKONOMIE", 0, 10, MIN_SIMILARITY).uuids()).containsExactly("okonomie");
+	}
+
+	@Test
+	void partiallyTypedWordMatchesAsPrefix() {
+		GameSearchResult result = index.search("port", 0, 10, MIN_SIMILARITY);
+
+		// Equal scores rank the shorter name first
+		assertThat(result.uuids()).containsExactly("portal", "portal-2");
+		assertThat(result.total()).isEqualTo(2);
+	}
+
+	@Test
+	void exactMatchRanksFirst() {
+		assertThat(index.search("portal 2", 0, 10, MIN_SIMILARITY).uuids()).startsWith("portal-2");
+	}
+
+	@Test
+	void typosStillMatch() {
+		assertThat(index.search("portl", 0, 10, MIN_SIMILARITY).uuids()).contains("portal");
+		assertThat(index.search("xyz", 0, 10, MIN_SIMILARITY).total()).isZero();
+	}
+
+	@Test
+	void pagesKeepTheTotalOfAllMatches() {
+		GameSearchResult page = index.search("port", 1, 1, MIN_SIMILARITY);
+
+		assertThat(page.uuids()).containsExactly("portal-2");
+		assertThat(page.total()).isEqualTo(2);
+		assertThat(index.search("port", 0, 0, MIN_SIMILARITY).total()).isEqualTo(2);
+	}
+
+	@Test
+	void removedAndRenamedGamesAreReindexed() {
+		index.remove("portal");
+		index.put("half-life", "Black Mesa");
+
+		assertThat(index.size()).isEqualTo(3);
+		assertThat(index.search("port", 0, 10, MIN_SIMILARITY).uuids()).containsExactly("portal-2");
+		assertThat(index.search("half", 0, 10, MIN_SIMILARITY).total()).isZero();
+		assertThat(index.search("black", 0, 10, MIN_SIMILARITY).uuids()).containsExactly("half-life");
+	}
+
+	@Test
+	void removedIdsAreCompacted() {
+		for (int i = 0; i < 3000; i++) {
+			index.put("game-" + i, "Game " + i);
+		}
+		for (int i = 0; i < 3000; i++) {
+			if (i != 1234) {
+				index.remove("game-" + i);
+			}
+		}
+
+		assertThat(index.size()).isEqualTo(5);
+		assertThat(index.idCount()).isLessThan(3000);
+		assertThat(index.search("game", 0, 10, MIN_SIMILARITY).uuids()).containsExactly("game-1234");
+		assertThat(index.search("port", 0, 10, MIN_SIMILARITY).uuids()).containsExactly("portal", "portal-2");
+		index.put("game-1234", "Game Renamed");
+		assertThat(index.search("renamed", 0, 10, MIN_SIMILARITY).uuids()).containsExactly("game-1234");
+	}
+
+	@Test
+	void blankQueryMatchesNothing() {
+		GameSearchResult result = index.search(" !? ", 0, 10, MIN_SIMILARITY);
+
+		assertThat(result.uuids()).isEmpty();
+		assertThat(result.total()).isZero();
+	}
+}